@@ -0,0 +1,230 @@
+package robotrace.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs large numbers of races without a window, to tune the speed model
+ * and compare tracks, and aggregates their results.
+ *
+ * Every race is an independent task for a pool with a thread per core.
+ * The races share only the track geometry, whose spatial indexes are
+ * built before the races start, so throughput scales with the cores.
+ *
+ * Usage: {@code RobotRace batch [races] [laps] [trackNr...]}
+ */
+public class BatchRaceRunner {
+
+    /** Number of simulation ticks per second of race time. */
+    public final static int TICK_RATE = Race.TICK_RATE;
+
+    /** Number of robots per race. */
+    public final static int ROBOTS = 4;
+
+    /** Number of races to run. */
+    private final int races;
+
+    /** Number of laps per race. */
+    private final int laps;
+
+    /** Tracks to race on, in turn. */
+    private final int[] trackNrs;
+
+    /** Seed of the first race; race i uses seed + i. */
+    private final long seed;
+
+    /** Geometry of the tracks, shared by all races. */
+    private final TrackGeometry track = new TrackGeometry();
+
+    /**
+     * Constructs a runner for the given number of races and laps,
+     * cycling through the given tracks.
+     */
+    public BatchRaceRunner(int races, int laps, int[] trackNrs, long seed) {
+        this.races = races;
+        this.laps = laps;
+        this.trackNrs = trackNrs;
+        this.seed = seed;
+    }
+
+    /**
+     * Parses the command line arguments, runs the races and prints the
+     * report.
+     */
+    public static void main(String[] args) throws Exception {
+        int races = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int laps = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int[] trackNrs = new int[] {0, 1, 2, 3, 4};
+        if (args.length > 3) {
+            trackNrs = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                trackNrs[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+        new BatchRaceRunner(races, laps, trackNrs, 0).run();
+    }
+
+    /**
+     * Runs all races, and prints the aggregated results.
+     */
+    public void run() throws InterruptedException, ExecutionException {
+        // Build the shared indexes up front, so the races never contend
+        for (int trackNr : trackNrs) {
+            track.getTrackIndex(trackNr);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<RaceResult>> futures = new ArrayList<Future<RaceResult>>(races);
+        long start = System.nanoTime();
+        for (int i = 0; i < races; i++) {
+            final long raceSeed = seed + i;
+            final int trackNr = trackNrs[i % trackNrs.length];
+            futures.add(pool.submit(new Callable<RaceResult>() {
+                @Override
+                public RaceResult call() {
+                    return runRace(trackNr, raceSeed);
+                }
+            }));
+        }
+        List<RaceResult> results = new ArrayList<RaceResult>(races);
+        for (Future<RaceResult> future : futures) {
+            results.add(future.get());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        report(results, threads, seconds);
+    }
+
+    /**
+     * Runs a single race on {@code trackNr} until all robots have
+     * finished, or until it is cut off at the time in which even the
+     * slowest robot should have finished.
+     */
+    public RaceResult runRace(int trackNr, long raceSeed) {
+        final RaceResult result = new RaceResult();
+        result.trackNr = trackNr;
+        result.finishTimes = new double[ROBOTS];
+
+        RobotMotion[] robots = new RobotMotion[ROBOTS];
+        for (int i = 0; i < ROBOTS; i++) {
+            robots[i] = new RobotMotion(i, track);
+        }
+        Race race = new Race(robots, track, new Random(raceSeed));
+        race.setTrackNr(trackNr);
+        RankingEngine ranking = race.getRanking();
+        ranking.setLaps(laps);
+        race.getProximityDetector().addListener(new RaceEventListener() {
+            @Override
+            public void overtake(int overtaker, int overtaken, int position, double aTime) {
+                if (0 == position) {
+                    result.leadChanges++;
+                }
+            }
+        });
+
+        // Even the slowest robot finishes well within this time
+        long maxTicks = (long) ((laps / Race.SPEED_MINIMUM + 1) * TICK_RATE);
+        for (long tick = 0; tick <= maxTicks && !ranking.isFinished(); tick++) {
+            race.step(tick / (double) TICK_RATE);
+        }
+        result.finished = ranking.isFinished();
+        if (result.finished) {
+            result.winner = ranking.getRobotAtFinish(0);
+        }
+        for (int i = 0; i < ROBOTS; i++) {
+            result.finishTimes[i] = ranking.getFinishTime(i);
+        }
+        return result;
+    }
+
+    /**
+     * Prints win rates, finish time distribution and lead changes,
+     * per track and overall.
+     */
+    private void report(List<RaceResult> results, int threads, double seconds) {
+        System.out.println("Ran " + results.size() + " races of " + laps
+                + " laps on " + threads + " threads in "
+                + String.format("%.2f", seconds) + "s ("
+                + String.format("%.0f", results.size() / seconds) + " races/s)");
+        for (int trackNr : distinct(trackNrs)) {
+            reportTrack(results, trackNr);
+        }
+    }
+
+    /**
+     * Prints the results of the races on one track. Races that were cut
+     * off before all robots finished are counted, but left out of the
+     * statistics.
+     */
+    private void reportTrack(List<RaceResult> results, int trackNr) {
+        int[] wins = new int[ROBOTS];
+        List<Double> times = new ArrayList<Double>();
+        long leadChanges = 0;
+        int unfinished = 0;
+        for (RaceResult result : results) {
+            if (result.trackNr != trackNr) {
+                continue;
+            }
+            if (!result.finished) {
+                unfinished++;
+                continue;
+            }
+            wins[result.winner]++;
+            leadChanges += result.leadChanges;
+            times.add(result.finishTimes[result.winner]);
+        }
+        if (unfinished > 0) {
+            System.out.println("Track " + trackNr + ": " + unfinished
+                    + " races cut off before all robots finished");
+        }
+        if (times.isEmpty()) {
+            return;
+        }
+        Collections.sort(times);
+        double sum = 0;
+        for (double time : times) {
+            sum += time;
+        }
+        double mean = sum / times.size();
+        double variance = 0;
+        for (double time : times) {
+            variance += (time - mean) * (time - mean);
+        }
+        StringBuilder winRates = new StringBuilder();
+        for (int i = 0; i < ROBOTS; i++) {
+            winRates.append(String.format(" %d:%.1f%%", i, 100.0 * wins[i] / times.size()));
+        }
+        System.out.println("Track " + trackNr + ": " + times.size() + " races");
+        System.out.println("  win rates:" + winRates);
+        System.out.println(String.format(
+                "  winning time: mean %.2fs, stddev %.2fs, min %.2fs, median %.2fs, p90 %.2fs, max %.2fs",
+                mean, Math.sqrt(variance / times.size()), times.get(0),
+                times.get(times.size() / 2), times.get(times.size() * 9 / 10),
+                times.get(times.size() - 1)));
+        System.out.println(String.format("  lead changes: %.2f per race",
+                leadChanges / (double) times.size()));
+    }
+
+    /**
+     * Returns the distinct values of {@code values}, in order of first
+     * occurrence.
+     */
+    private static List<Integer> distinct(int[] values) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int value : values) {
+            if (!result.contains(value)) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package robotrace.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures the startup cost and memory footprint of the core on its own:
+ * building the geometry, curvature tables and spatial indexes of all
+ * tracks, and setting up and running a race, without JOGL or a window.
+ *
+ * Usage: {@code java -cp RobotRaceCore.jar:RobotRaceLibrary.jar
+ * robotrace.core.CoreFootprint [ticks]}
+ */
+public class CoreFootprint {
+
+    /** Number of tracks. */
+    public final static int TRACKS = 5;
+
+    /** Number of robots in the race. */
+    public final static int ROBOTS = 4;
+
+    /**
+     * Runs the measurement and prints the report.
+     */
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 60 * Race.TICK_RATE;
+        long baseHeap = usedHeap();
+        int baseClasses = loadedClasses();
+
+        long start = System.nanoTime();
+        TrackGeometry track = new TrackGeometry();
+        long geometryNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int trackNr = 0; trackNr < TRACKS; trackNr++) {
+            track.getTrackIndex(trackNr);
+        }
+        long indexNanos = System.nanoTime() - start;
+        long trackHeap = usedHeap() - baseHeap;
+
+        start = System.nanoTime();
+        RobotMotion[] robots = new RobotMotion[ROBOTS];
+        for (int i = 0; i < ROBOTS; i++) {
+            robots[i] = new RobotMotion(i, track);
+        }
+        Race race = new Race(robots, track, new Random(0));
+        long raceNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (long tick = 0; tick < ticks; tick++) {
+            race.step(tick / (double) Race.TICK_RATE);
+        }
+        long stepNanos = System.nanoTime() - start;
+
+        System.out.printf("Core footprint (%s)%n",
+                isJoglAvailable() ? "JOGL on the class path" : "without JOGL");
+        System.out.printf("  track geometry: %.1f ms%n", geometryNanos / 1e6);
+        System.out.printf("  track indexes:  %.1f ms%n", indexNanos / 1e6);
+        System.out.printf("  race setup:     %.3f ms%n", raceNanos / 1e6);
+        System.out.printf("  race steps:     %.1f us per tick over %d ticks%n",
+                stepNanos / 1e3 / ticks, ticks);
+        System.out.printf("  tracks heap:    %.1f kB%n", trackHeap / 1024.0);
+        System.out.printf("  total heap:     %.1f kB%n", (usedHeap() - baseHeap) / 1024.0);
+        System.out.printf("  classes loaded: %d (%d in the JVM)%n",
+                loadedClasses() - baseClasses, loadedClasses());
+        System.out.printf("  JVM uptime:     %d ms%n",
+                ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection, in bytes.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the number of classes loaded so far.
+     */
+    private static int loadedClasses() {
+        return ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+    }
+
+    /**
+     * Returns whether JOGL can be found on the class path, without
+     * loading it.
+     */
+    private static boolean isJoglAvailable() {
+        return CoreFootprint.class.getClassLoader()
+                .getResource("javax/media/opengl/GL.class") != null;
+    }
+}
@@ -0,0 +1,249 @@
+package robotrace.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import robotrace.Vector;
+
+/**
+ * Detects robots that are close to each other, and robots that
+ * overtake each other.
+ *
+ * Broad phase: the robots are kept sorted by their arc length along
+ * the center line of the track. Since the order rarely changes between
+ * ticks, an insertion sort restores it in linear time. Sweeping over
+ * the sorted robots, only those within a small window of arc length
+ * are candidates.
+ *
+ * Narrow phase: the candidates are tested exactly with oriented
+ * bounding boxes of the torso, widened by {@code PROXIMITY_MARGIN}.
+ *
+ * Overtakes follow from a second order, on the total distance
+ * travelled: every swap in its insertion sort is a position change.
+ */
+public class ProximityDetector {
+
+    /** Distance around the torso at which robots are considered close. */
+    public final static double PROXIMITY_MARGIN = 0.5;
+
+    /** Half of the length of a robot. */
+    private final static double HALF_LENGTH = RobotMotion.LENGTH / 2;
+
+    /** Half of the width of a robot. */
+    private final static double HALF_WIDTH = RobotMotion.WIDTH / 2;
+
+    /**
+     * Largest distance between the centers of robots that are close:
+     * twice the half diagonal of a widened box.
+     */
+    private final static double REACH = 2 * Math.sqrt(
+            (HALF_LENGTH + PROXIMITY_MARGIN) * (HALF_LENGTH + PROXIMITY_MARGIN)
+            + (HALF_WIDTH + PROXIMITY_MARGIN) * (HALF_WIDTH + PROXIMITY_MARGIN));
+
+    /** Number of robots. */
+    private final int n;
+
+    /** Arc length along the track of each robot, in the range [0, track length). */
+    private final double[] arcLength;
+
+    /** Total distance travelled by each robot. */
+    private final double[] totalDistance;
+
+    /** Center of the bounding box of each robot. */
+    private final double[] centerX, centerY;
+
+    /** Unit heading of each robot. */
+    private final double[] headingX, headingY;
+
+    /** Robots ordered by arc length along the track. */
+    private final int[] byArcLength;
+
+    /** Robots ordered by total distance, the leader first. */
+    private final int[] byPosition;
+
+    /** Pairs of robots that are close, in the first 2 * pairCount elements. */
+    private int[] pairs;
+
+    /** Number of pairs of robots that are close. */
+    private int pairCount = 0;
+
+    /** Listeners to notify of race events. */
+    private final List<RaceEventListener> listeners =
+            new ArrayList<RaceEventListener>();
+
+    /**
+     * Constructs a detector for {@code n} robots.
+     */
+    public ProximityDetector(int n) {
+        this.n = n;
+        arcLength = new double[n];
+        totalDistance = new double[n];
+        centerX = new double[n];
+        centerY = new double[n];
+        headingX = new double[n];
+        headingY = new double[n];
+        byArcLength = new int[n];
+        byPosition = new int[n];
+        for (int i = 0; i < n; i++) {
+            byArcLength[i] = i;
+            byPosition[i] = i;
+        }
+        pairs = new int[2 * n];
+    }
+
+    /**
+     * Registers a listener for race events.
+     */
+    public void addListener(RaceEventListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sets the state of robot {@code i} for the next detection, where
+     * {@code arcLength} is its distance from the start along the center
+     * line of the track.
+     */
+    public void set(int i, double arcLength, double totalDistance,
+            Vector position, Vector tangent) {
+        this.arcLength[i] = arcLength;
+        this.totalDistance[i] = totalDistance;
+        double length = Math.sqrt(tangent.x() * tangent.x()
+                + tangent.y() * tangent.y());
+        headingX[i] = tangent.x() / length;
+        headingY[i] = tangent.y() / length;
+        // The robot is drawn backwards from its front foot
+        centerX[i] = position.x() - headingX[i] * HALF_LENGTH;
+        centerY[i] = position.y() - headingY[i] * HALF_LENGTH;
+    }
+
+    /**
+     * Detects close robots and overtakes, given the length of the center
+     * line of the track, and the largest ratio of its arc length to that
+     * of a lane alongside it.
+     */
+    public void detect(double trackLength, double arcScale, double aTime) {
+        detectOvertakes(aTime);
+
+        // Sort by arc length along the track
+        for (int i = 1; i < n; i++) {
+            int robot = byArcLength[i];
+            int j = i;
+            while (j > 0 && arcLength[byArcLength[j - 1]] > arcLength[robot]) {
+                byArcLength[j] = byArcLength[j - 1];
+                j--;
+            }
+            byArcLength[j] = robot;
+        }
+
+        // Robots on the inner lanes cover less ground in the curves than
+        // the center line, hence the room on the window
+        double window = REACH * arcScale;
+        pairCount = 0;
+        for (int i = 0; i < n; i++) {
+            int a = byArcLength[i];
+            // Sweep forwards, wrapping around the start line
+            for (int k = 1; k < n; k++) {
+                int b = byArcLength[(i + k) % n];
+                double gap = arcLength[b] - arcLength[a];
+                if (gap < 0) {
+                    gap += trackLength;
+                }
+                if (gap > window) {
+                    break;
+                }
+                if (overlap(a, b)) {
+                    addPair(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the order on total distance, reporting every swap as
+     * an overtake.
+     */
+    private void detectOvertakes(double aTime) {
+        for (int i = 1; i < n; i++) {
+            int robot = byPosition[i];
+            int j = i;
+            while (j > 0 && totalDistance[byPosition[j - 1]] < totalDistance[robot]) {
+                int overtaken = byPosition[j - 1];
+                byPosition[j] = overtaken;
+                j--;
+                for (int l = 0; l < listeners.size(); l++) {
+                    listeners.get(l).overtake(robot, overtaken, j, aTime);
+                }
+            }
+            byPosition[j] = robot;
+        }
+    }
+
+    /**
+     * Returns whether the widened bounding boxes of robots {@code a}
+     * and {@code b} overlap, using the separating axis theorem.
+     */
+    private boolean overlap(int a, int b) {
+        double dx = centerX[b] - centerX[a];
+        double dy = centerY[b] - centerY[a];
+        double halfLength = HALF_LENGTH + PROXIMITY_MARGIN;
+        double halfWidth = HALF_WIDTH + PROXIMITY_MARGIN;
+        // The axes of both boxes: their headings and the perpendiculars
+        for (int box = 0; box < 2; box++) {
+            int r = (box == 0) ? a : b;
+            for (int axis = 0; axis < 2; axis++) {
+                double ax = (axis == 0) ? headingX[r] : -headingY[r];
+                double ay = (axis == 0) ? headingY[r] : headingX[r];
+                double projA = halfLength * Math.abs(headingX[a] * ax + headingY[a] * ay)
+                        + halfWidth * Math.abs(-headingY[a] * ax + headingX[a] * ay);
+                double projB = halfLength * Math.abs(headingX[b] * ax + headingY[b] * ay)
+                        + halfWidth * Math.abs(-headingY[b] * ax + headingX[b] * ay);
+                if (Math.abs(dx * ax + dy * ay) > projA + projB) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that robots {@code a} and {@code b} are close.
+     */
+    private void addPair(int a, int b) {
+        if (2 * pairCount + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+        }
+        pairs[2 * pairCount] = a;
+        pairs[2 * pairCount + 1] = b;
+        pairCount++;
+    }
+
+    /**
+     * Returns the number of pairs of robots that were close in the
+     * last detection.
+     */
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    /**
+     * Returns the first robot of the {@code i}'th close pair.
+     */
+    public int getPairFirst(int i) {
+        return pairs[2 * i];
+    }
+
+    /**
+     * Returns the second robot of the {@code i}'th close pair.
+     */
+    public int getPairSecond(int i) {
+        return pairs[2 * i + 1];
+    }
+
+    /**
+     * Returns the robot at {@code position} in the race, 0 being the
+     * leader.
+     */
+    public int getRobotAtPosition(int position) {
+        return byPosition[position];
+    }
+}
@@ -0,0 +1,174 @@
+package robotrace.core;
+
+import java.util.Random;
+
+/**
+ * A race between robots on one of the tracks.
+ *
+ * This determines the speeds, moves the robots and detects proximity
+ * and overtakes, without drawing anything, so the same race runs in
+ * the window and in headless batches.
+ */
+public class Race {
+
+    /** Resolution of the timers, in ticks per second. */
+    public final static int TICK_RATE = 20;
+
+    /**
+     * Speed multiplier.
+     *
+     * Usually something like 0.1
+     */
+    public final static double SPEED_MULTIPLIER = 0.05;
+
+    /**
+     * Minimum speed.
+     *
+     * Usually something like 0.1
+     */
+    public final static double SPEED_MINIMUM = 0.05;
+
+    /**
+     * Relative speed boost of a robot in a curve, per unit of curvature
+     * of its lane.
+     */
+    public final static double CURVE_BOOST = 3.0;
+
+    /**
+     * Average time between speed changes of a robot, in seconds. The
+     * actual intervals vary by half of this either way.
+     */
+    public final static double SPEED_CHANGE_INTERVAL = 1.0;
+
+    /** The racing robots. */
+    private final RobotMotion[] robots;
+
+    /** Geometry of the tracks. */
+    private final TrackGeometry track;
+
+    /** Random source for the speeds. */
+    private final Random rand;
+
+    /** Detects close robots and overtakes. */
+    private final ProximityDetector proximityDetector;
+
+    /** Counts the laps and ranks the robots. */
+    private final RankingEngine ranking;
+
+    /** Schedules the speed changes, and other events of the race. */
+    private final TimerWheel timers = new TimerWheel();
+
+    /** Timer of the speed changes of the first robot; the others follow. */
+    private final int firstSpeedTimer;
+
+    /** Speed that each robot picked at its last speed change, before the boost in curves. */
+    private final double[] baseSpeeds;
+
+    /** Track on which the robots race. */
+    private int trackNr = 0;
+
+    /** Spatial index over the track, which knows its length. */
+    private TrackIndex trackIndex;
+
+    /**
+     * Constructs a race between the given robots, on the test track.
+     */
+    public Race(RobotMotion[] robots, TrackGeometry track, Random rand) {
+        this.robots = robots;
+        this.track = track;
+        this.rand = rand;
+        proximityDetector = new ProximityDetector(robots.length);
+        ranking = new RankingEngine(robots.length);
+        baseSpeeds = new double[robots.length];
+        trackIndex = track.getTrackIndex(trackNr);
+
+        // All robots set off at the first tick, and change their speeds
+        // independently from then on
+        TimerListener speedChange = new TimerListener() {
+            @Override
+            public void expire(int timer, long tick) {
+                changeBaseSpeed(timer - firstSpeedTimer);
+            }
+        };
+        firstSpeedTimer = timers.createTimer(speedChange);
+        timers.schedule(firstSpeedTimer, 0);
+        for (int i = 1; i < robots.length; i++) {
+            timers.schedule(timers.createTimer(speedChange), 0);
+        }
+    }
+
+    /**
+     * Returns the detector of close robots and overtakes.
+     */
+    public ProximityDetector getProximityDetector() {
+        return proximityDetector;
+    }
+
+    /**
+     * Returns the laps, lap times and ranking of the robots.
+     */
+    public RankingEngine getRanking() {
+        return ranking;
+    }
+
+    /**
+     * Changes the track on which the robots race.
+     */
+    public void setTrackNr(int trackNr) {
+        if (trackNr != this.trackNr) {
+            this.trackNr = trackNr;
+            trackIndex = track.getTrackIndex(trackNr);
+        }
+    }
+
+    /**
+     * Returns the timers of the race, in ticks of {@link #TICK_RATE}.
+     */
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * Advances the race to {@code aTime}, in seconds.
+     */
+    public void step(double aTime) {
+        timers.advance(Math.round(aTime * TICK_RATE));
+        for (int i = 0; i < robots.length; i++) {
+            RobotMotion robot = robots[i];
+            robot.updatePosition(aTime, trackNr);
+            robot.setSpeed(getSpeed(robot, baseSpeeds[i]));
+            proximityDetector.set(i, trackIndex.getArcLength(robot.getDistance()),
+                    robot.getTotalDistance(),
+                    robot.getLastCalculatedPosition(),
+                    robot.getLastCalculatedPositionTangent());
+            ranking.update(i, robot.getTotalDistance(), aTime);
+        }
+        proximityDetector.detect(trackIndex.getLength(), trackIndex.getArcScale(), aTime);
+        ranking.rank();
+    }
+
+    /**
+     * Returns the speed of {@code robot} at its current position, given
+     * its base speed.
+     *
+     * Robots get a boost in curves, which is larger for tighter
+     * curves. The lanes run parallel to the center line, so their
+     * curves are tighter on the inside of a curve of the track.
+     */
+    private double getSpeed(RobotMotion robot, double baseSpeed) {
+        double curvature = track.getCurvature(trackNr, robot.getDistance());
+        double laneCurvature = curvature / Math.max(1 - curvature * robot.getLane(), 0.1);
+        return baseSpeed * (1 + CURVE_BOOST * Math.abs(laneCurvature));
+    }
+
+    /**
+     * Gives robot {@code i} a new random base speed, and schedules its
+     * next speed change.
+     */
+    private void changeBaseSpeed(int i) {
+        baseSpeeds[i] = SPEED_MINIMUM + rand.nextDouble() * SPEED_MULTIPLIER;
+        double interval = SPEED_CHANGE_INTERVAL * (0.5 + rand.nextDouble());
+        timers.schedule(firstSpeedTimer + i,
+                timers.getTick() + Math.max(1, Math.round(interval * TICK_RATE)));
+    }
+}
@@ -0,0 +1,13 @@
+package robotrace.core;
+
+/**
+ * Receives the race events detected by the {@link ProximityDetector}.
+ */
+public interface RaceEventListener {
+
+    /**
+     * Called when robot {@code overtaker} passes robot {@code overtaken}
+     * and thereby moves up to {@code position} (0 is the leader).
+     */
+    void overtake(int overtaker, int overtaken, int position, double aTime);
+}
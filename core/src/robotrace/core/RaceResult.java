@@ -0,0 +1,22 @@
+package robotrace.core;
+
+/**
+ * Outcome of a single headless race.
+ */
+public class RaceResult {
+
+    /** Track on which the race was run. */
+    public int trackNr;
+
+    /** Time at which each robot finished, in seconds, or NaN if it did not. */
+    public double[] finishTimes;
+
+    /** Whether all robots finished before the race was cut off. */
+    public boolean finished;
+
+    /** The robot that finished first, or -1 if the race did not finish. */
+    public int winner = -1;
+
+    /** Number of times the lead changed during the race. */
+    public int leadChanges;
+}
@@ -0,0 +1,349 @@
+package robotrace.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Headless server that runs a race and broadcasts its state every tick
+ * to any number of subscribers over TCP, in the {@link RaceStream}
+ * format.
+ *
+ * A single thread runs the simulation and serves all subscribers with
+ * non-blocking channels. Every subscriber has an output buffer of a
+ * fixed size; a tick that does not fit in it is skipped for that
+ * subscriber, which then catches up with the next frame, since frames
+ * are relative to the last tick it acknowledged rather than to the
+ * last tick sent. Subscribers at the same base share the encoded frame.
+ *
+ * Usage: {@code RobotRace server [port] [trackNr]}
+ */
+public class RaceServer implements Runnable {
+
+    /** Number of robots in the race. */
+    public final static int ROBOTS = 4;
+
+    /** Size of the output buffer of a subscriber, in bytes. */
+    public final static int CLIENT_BUFFER = 4096;
+
+    /** Port at which to listen. */
+    private final int port;
+
+    /** Track on which the robots race. */
+    private final int trackNr;
+
+    /** The race that is broadcast. */
+    private final Race race;
+
+    /** The racing robots. */
+    private final RobotMotion[] robots = new RobotMotion[ROBOTS];
+
+    /** Clock that paces the ticks. */
+    private final SimulationClock clock = new SimulationClock(1);
+
+    /** States of the recent ticks, as bases of the frames. */
+    private final RaceStream.History history = new RaceStream.History(ROBOTS);
+
+    /** Encoded frames of the current tick, by distance to their base; 0 is the key frame. */
+    private final ByteBuffer[] frames = new ByteBuffer[RaceStream.HISTORY];
+
+    /** Tick for which each frame was encoded, or -1. */
+    private final long[] frameTicks = new long[RaceStream.HISTORY];
+
+    /** Receive the state of every tick as it is broadcast. */
+    private final List<RaceStreamListener> listeners =
+            new ArrayList<RaceStreamListener>();
+
+    /** Total distance of each robot in the current tick, as broadcast. */
+    private final double[] totalDistance = new double[ROBOTS];
+
+    /** Number of ticks simulated so far. */
+    private long tick = 0;
+
+    /** Port at which the server listens, once it does, or -1. */
+    private volatile int localPort = -1;
+
+    /** Whether the server should keep running. */
+    private volatile boolean running = true;
+
+    /** Number of subscribers connected. */
+    private volatile int clientCount = 0;
+
+    /** Number of frames skipped because an output buffer was full. */
+    private volatile long droppedFrames = 0;
+
+    /**
+     * Constructs a server of a race on track {@code trackNr}, which
+     * listens at {@code port}.
+     */
+    public RaceServer(int port, int trackNr) {
+        this.port = port;
+        this.trackNr = trackNr;
+        TrackGeometry track = new TrackGeometry();
+        for (int i = 0; i < ROBOTS; i++) {
+            robots[i] = new RobotMotion(i, track);
+        }
+        race = new Race(robots, track, new Random());
+        race.setTrackNr(trackNr);
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = ByteBuffer.allocate(RaceStream.getMaxFrameSize(ROBOTS));
+            frameTicks[i] = -1;
+        }
+    }
+
+    /**
+     * Parses the command line arguments and runs the server.
+     */
+    public static void main(String[] args) {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : RaceStream.DEFAULT_PORT;
+        int trackNr = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        new RaceServer(port, trackNr).run();
+    }
+
+    /**
+     * Registers a listener for the state of every tick, called on the
+     * thread of the server before the tick is sent to the subscribers.
+     * Must be called before the server runs.
+     */
+    public void addListener(RaceStreamListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sets the number of simulated seconds per second of wall clock
+     * time, 1 by default.
+     */
+    public void setTimeScale(double timeScale) {
+        clock.setTimeScale(timeScale);
+    }
+
+    /**
+     * Returns the port at which the server listens, which differs from
+     * the one given for port 0, or -1 if it does not listen yet.
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    /**
+     * Stops the server after its current tick.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Returns the number of subscribers connected.
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Returns the number of frames skipped because the output buffer of
+     * a subscriber was full.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Runs the race, and serves the subscribers in between the ticks.
+     */
+    @Override
+    public void run() {
+        long tickNanos = 1000000000L / Race.TICK_RATE;
+        try {
+            Selector selector = Selector.open();
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.socket().bind(new InetSocketAddress(port));
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            localPort = server.socket().getLocalPort();
+            System.out.println("Broadcasting track " + trackNr + " at port " + localPort);
+
+            while (running) {
+                long wait = clock.getSystemNanosUntil(tick * tickNanos);
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1000000L));
+                } else {
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    serve(key, selector);
+                }
+
+                if (clock.getNanos() >= tick * tickNanos) {
+                    // hold the clock back rather than catching up on a second
+                    if (clock.getNanos() - tick * tickNanos > Race.TICK_RATE * tickNanos) {
+                        clock.setNanos(tick * tickNanos);
+                    }
+                    step();
+                    broadcast(selector);
+                    tick++;
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Accepts a subscriber, reads its acknowledgements or writes its
+     * pending output, depending on what {@code key} is ready for.
+     */
+    private void serve(SelectionKey key, Selector selector) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+            if (null != channel) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                // keep the backlog of a slow subscriber in its bounded
+                // buffer, rather than seconds of stale frames in the socket
+                channel.socket().setSendBufferSize(CLIENT_BUFFER);
+                channel.register(selector, SelectionKey.OP_READ, new Client());
+                clientCount++;
+            }
+            return;
+        }
+        Client client = (Client) key.attachment();
+        try {
+            if (key.isReadable()) {
+                SocketChannel channel = (SocketChannel) key.channel();
+                if (channel.read(client.in) < 0) {
+                    close(key);
+                    return;
+                }
+                client.in.flip();
+                while (client.in.remaining() >= RaceStream.ACK_SIZE) {
+                    client.acked = Math.max(client.acked, client.in.getLong());
+                }
+                client.in.compact();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(key, client);
+            }
+        } catch (IOException ex) {
+            close(key);
+        }
+    }
+
+    /**
+     * Simulates a tick, stores its state in the history and hands it to
+     * the listeners.
+     */
+    private void step() {
+        race.step(tick / (double) Race.TICK_RATE);
+        long[] state = history.getSlot(tick);
+        for (int i = 0; i < ROBOTS; i++) {
+            state[i] = RaceStream.quantize(robots[i].getTotalDistance());
+            totalDistance[i] = RaceStream.dequantize(state[i]);
+        }
+        history.put(tick, trackNr);
+        for (int l = 0; l < listeners.size(); l++) {
+            listeners.get(l).receive(tick, trackNr, totalDistance);
+        }
+    }
+
+    /**
+     * Queues the frame of the current tick for every subscriber, and
+     * writes out as much as the channels take without blocking.
+     */
+    private void broadcast(Selector selector) {
+        long[] state = history.get(tick);
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof Client)) {
+                continue;
+            }
+            Client client = (Client) key.attachment();
+
+            // relative to the last acknowledged tick, if it is still known
+            int distance = (int) Math.min(tick - client.acked, RaceStream.HISTORY);
+            long[] base = history.get(client.acked);
+            if (distance <= 0 || distance >= RaceStream.HISTORY || null == base) {
+                distance = 0;
+                base = null;
+            }
+            ByteBuffer frame = frames[distance];
+            if (frameTicks[distance] != tick) {
+                frame.clear();
+                RaceStream.encode(frame, tick, trackNr, state, tick - distance, base);
+                frame.flip();
+                frameTicks[distance] = tick;
+            }
+
+            if (client.out.remaining() < frame.remaining()) {
+                droppedFrames++;
+                continue;
+            }
+            client.out.put(frame.duplicate());
+            try {
+                flush(key, client);
+            } catch (IOException ex) {
+                close(key);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending output of {@code client} without blocking, and
+     * asks to be told when the channel takes more if any is left.
+     */
+    private void flush(SelectionKey key, Client client) throws IOException {
+        client.out.flip();
+        ((SocketChannel) key.channel()).write(client.out);
+        client.out.compact();
+        if (client.out.position() > 0) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Disconnects the subscriber of {@code key}.
+     */
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            // the subscriber is gone either way
+        }
+        clientCount--;
+    }
+
+    /**
+     * A connected subscriber.
+     */
+    private static class Client {
+
+        /** Frames queued for the subscriber, bounded. */
+        private final ByteBuffer out = ByteBuffer.allocate(CLIENT_BUFFER);
+
+        /** Partial acknowledgements read from the subscriber. */
+        private final ByteBuffer in = ByteBuffer.allocate(16 * RaceStream.ACK_SIZE);
+
+        /** The last tick that the subscriber acknowledged, or -1. */
+        private long acked = -1;
+    }
+}
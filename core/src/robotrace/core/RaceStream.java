@@ -0,0 +1,195 @@
+package robotrace.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Wire format of the race broadcast, from a {@link RaceServer} to its
+ * subscribers.
+ *
+ * The state of a tick is the total distance of every robot along the
+ * track, quantized to {@link #QUANTA_PER_LAP} steps per lap; the
+ * positions follow from the track. A frame holds the state as the
+ * difference with a base tick that the subscriber acknowledged, or the
+ * whole state in a key frame. Frames are prefixed by their length:
+ *
+ * - length: unsigned short, of the rest of the frame;
+ * - tick: var long;
+ * - tick - base tick: var long, 0 for a key frame;
+ * - track number: byte;
+ * - number of robots: byte;
+ * - per robot, the quantized distance minus that of the base: zigzag
+ *   var long.
+ *
+ * A subscriber acknowledges every frame it decoded by sending its tick
+ * as a long.
+ */
+public class RaceStream {
+
+    /** Port at which the server listens, unless given otherwise. */
+    public final static int DEFAULT_PORT = 7777;
+
+    /** Steps per lap to which distances are quantized. */
+    public final static double QUANTA_PER_LAP = 65536;
+
+    /** Number of recent ticks that can serve as the base of a frame. */
+    public final static int HISTORY = 64;
+
+    /** Number of bytes of an acknowledgement. */
+    public final static int ACK_SIZE = 8;
+
+    /**
+     * Returns the largest size of a frame for {@code n} robots, in bytes.
+     */
+    public static int getMaxFrameSize(int n) {
+        return 2 + 10 + 10 + 1 + 1 + 10 * n;
+    }
+
+    /**
+     * Returns {@code totalDistance} quantized to steps of a lap.
+     */
+    public static long quantize(double totalDistance) {
+        return Math.round(totalDistance * QUANTA_PER_LAP);
+    }
+
+    /**
+     * Returns the total distance of quantized distance {@code q}.
+     */
+    public static double dequantize(long q) {
+        return q / QUANTA_PER_LAP;
+    }
+
+    /**
+     * Writes the frame of {@code state} at {@code tick} to {@code out},
+     * relative to {@code base} at {@code baseTick}, or as a key frame if
+     * {@code base} is null.
+     */
+    public static void encode(ByteBuffer out, long tick, int trackNr, long[] state,
+                              long baseTick, long[] base) {
+        int start = out.position();
+        out.putShort((short) 0);
+        putVarLong(out, tick);
+        putVarLong(out, null == base ? 0 : tick - baseTick);
+        out.put((byte) trackNr);
+        out.put((byte) state.length);
+        for (int i = 0; i < state.length; i++) {
+            long delta = state[i] - (null == base ? 0 : base[i]);
+            // zigzag, so small negative numbers stay short
+            putVarLong(out, (delta << 1) ^ (delta >> 63));
+        }
+        out.putShort(start, (short) (out.position() - start - 2));
+    }
+
+    /**
+     * Reads a frame from {@code in}, which holds exactly one frame
+     * without its length, and stores its state in {@code history}.
+     * Returns the tick of the frame, or -1 if its base is no longer in
+     * the history.
+     */
+    public static long decode(ByteBuffer in, History history) {
+        long tick = getVarLong(in);
+        long baseDistance = getVarLong(in);
+        int trackNr = in.get();
+        int n = in.get();
+        long[] base = null;
+        if (baseDistance > 0) {
+            base = history.get(tick - baseDistance);
+            if (null == base) {
+                return -1;
+            }
+        }
+        long[] state = history.getSlot(tick);
+        for (int i = 0; i < n; i++) {
+            long zigzag = getVarLong(in);
+            long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+            state[i] = delta + (null == base ? 0 : base[i]);
+        }
+        history.put(tick, trackNr);
+        return tick;
+    }
+
+    /**
+     * Writes {@code value} in groups of 7 bits, the lowest first.
+     */
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads a value written by {@link #putVarLong}.
+     */
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * The states of the most recent ticks, in a ring indexed by tick.
+     */
+    public static class History {
+
+        /** Tick stored in each slot, or -1. */
+        private final long[] ticks = new long[HISTORY];
+
+        /** Track number of each slot. */
+        private final int[] trackNrs = new int[HISTORY];
+
+        /** Quantized state of each slot. */
+        private final long[][] states;
+
+        /**
+         * Constructs an empty history of states of {@code n} robots.
+         */
+        public History(int n) {
+            states = new long[HISTORY][n];
+            Arrays.fill(ticks, -1);
+        }
+
+        /**
+         * Returns the slot for the state of {@code tick}, to be filled in
+         * before calling {@link #put}.
+         */
+        public long[] getSlot(long tick) {
+            return states[(int) (tick % HISTORY)];
+        }
+
+        /**
+         * Marks the slot of {@code tick} as holding its state.
+         */
+        public void put(long tick, int trackNr) {
+            int slot = (int) (tick % HISTORY);
+            ticks[slot] = tick;
+            trackNrs[slot] = trackNr;
+        }
+
+        /**
+         * Returns the state of {@code tick}, or null if it is not in the
+         * history.
+         */
+        public long[] get(long tick) {
+            if (tick < 0) {
+                return null;
+            }
+            int slot = (int) (tick % HISTORY);
+            return ticks[slot] == tick ? states[slot] : null;
+        }
+
+        /**
+         * Returns the track number of {@code tick}, which must be in the
+         * history.
+         */
+        public int getTrackNr(long tick) {
+            return trackNrs[(int) (tick % HISTORY)];
+        }
+    }
+}
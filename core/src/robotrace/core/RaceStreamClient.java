@@ -0,0 +1,116 @@
+package robotrace.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Subscriber of a race broadcast by a {@link RaceServer}. It decodes the
+ * frames on a thread of its own, acknowledges them, and hands the state
+ * of every tick to a {@link RaceStreamListener}.
+ */
+public class RaceStreamClient implements Runnable {
+
+    /** Address of the server. */
+    private final InetSocketAddress address;
+
+    /** Receives the decoded states. */
+    private final RaceStreamListener listener;
+
+    /** States of the recent ticks, as bases of the frames. */
+    private final RaceStream.History history = new RaceStream.History(RaceServer.ROBOTS);
+
+    /** Total distance of each robot in the last tick received. */
+    private final double[] totalDistance = new double[RaceServer.ROBOTS];
+
+    /** Whether the client should keep running. */
+    private volatile boolean running = true;
+
+    /** Number of ticks received. */
+    private volatile long received = 0;
+
+    /**
+     * Constructs a subscriber of the server at {@code address}.
+     */
+    public RaceStreamClient(InetSocketAddress address, RaceStreamListener listener) {
+        this.address = address;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts receiving, on a daemon thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "RaceStreamClient");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops receiving after the current frame.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Returns the number of ticks received.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Receives frames until stopped or disconnected.
+     */
+    @Override
+    public void run() {
+        ByteBuffer in = ByteBuffer.allocate(RaceServer.CLIENT_BUFFER);
+        ByteBuffer ack = ByteBuffer.allocate(RaceStream.ACK_SIZE);
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open(address);
+            channel.socket().setTcpNoDelay(true);
+            while (running && channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= 2 && in.remaining() >= 2 + (in.getShort(in.position()) & 0xFFFF)) {
+                    int length = in.getShort() & 0xFFFF;
+                    int end = in.position() + length;
+                    ByteBuffer frame = in.duplicate();
+                    frame.limit(end);
+                    in.position(end);
+
+                    long tick = RaceStream.decode(frame, history);
+                    if (tick < 0) {
+                        continue;
+                    }
+                    long[] state = history.get(tick);
+                    for (int i = 0; i < state.length; i++) {
+                        totalDistance[i] = RaceStream.dequantize(state[i]);
+                    }
+                    received++;
+                    listener.receive(tick, history.getTrackNr(tick), totalDistance);
+
+                    ack.clear();
+                    ack.putLong(tick);
+                    ack.flip();
+                    while (ack.hasRemaining()) {
+                        channel.write(ack);
+                    }
+                }
+                in.compact();
+            }
+        } catch (IOException ex) {
+            System.err.println("Lost the race broadcast: " + ex.getMessage());
+        } finally {
+            if (null != channel) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+}
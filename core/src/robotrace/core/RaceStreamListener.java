@@ -0,0 +1,13 @@
+package robotrace.core;
+
+/**
+ * Receives the states of a race broadcast by a {@link RaceServer}.
+ */
+public interface RaceStreamListener {
+
+    /**
+     * Called for every tick received, with the total distance of each
+     * robot along track {@code trackNr}.
+     */
+    void receive(long tick, int trackNr, double[] totalDistance);
+}
@@ -0,0 +1,230 @@
+package robotrace.core;
+
+/**
+ * Keeps track of the laps, lap times and ranking of the robots.
+ *
+ * A lap is completed whenever a robot crosses the start line, at
+ * {@code t = 0} on the track. The moment of crossing is interpolated
+ * between the ticks around it. The leaderboard is re-sorted with an
+ * insertion sort every tick, which takes linear time when the order
+ * barely changed, and nothing is allocated after construction.
+ */
+public class RankingEngine {
+
+    /** Number of robots. */
+    private final int n;
+
+    /** Number of laps of the race, or 0 when the race never ends. */
+    private int laps = 0;
+
+    /** Number of laps completed by each robot. */
+    private final int[] lapsCompleted;
+
+    /** Total distance of each robot at the last update. */
+    private final double[] totalDistance;
+
+    /** Time of the last update of each robot. */
+    private final double[] lastTime;
+
+    /** Time at which each robot last crossed the start line. */
+    private final double[] lastCrossing;
+
+    /** Duration of the last completed lap of each robot. */
+    private final double[] lastLapTime;
+
+    /** Duration of the fastest lap of each robot. */
+    private final double[] bestLapTime;
+
+    /** Time at which each robot finished, or NaN while racing. */
+    private final double[] finishTime;
+
+    /** Robots in order of their finish times, in the first finishedCount elements. */
+    private final int[] finishOrder;
+
+    /** Number of robots that finished. */
+    private int finishedCount = 0;
+
+    /** Robots ordered by rank, the leader first. */
+    private final int[] leaderboard;
+
+    /**
+     * Constructs a ranking of {@code n} robots, all at the start line.
+     */
+    public RankingEngine(int n) {
+        this.n = n;
+        lapsCompleted = new int[n];
+        totalDistance = new double[n];
+        lastTime = new double[n];
+        lastCrossing = new double[n];
+        lastLapTime = new double[n];
+        bestLapTime = new double[n];
+        finishTime = new double[n];
+        finishOrder = new int[n];
+        leaderboard = new int[n];
+        reset();
+    }
+
+    /**
+     * Puts all robots back at the start line, without any laps.
+     */
+    public void reset() {
+        for (int i = 0; i < n; i++) {
+            lapsCompleted[i] = 0;
+            totalDistance[i] = 0;
+            lastTime[i] = 0;
+            lastCrossing[i] = 0;
+            lastLapTime[i] = Double.NaN;
+            bestLapTime[i] = Double.NaN;
+            finishTime[i] = Double.NaN;
+            leaderboard[i] = i;
+        }
+        finishedCount = 0;
+    }
+
+    /**
+     * Sets the number of laps of the race, 0 meaning that the race
+     * never ends.
+     */
+    public void setLaps(int laps) {
+        this.laps = laps;
+    }
+
+    /**
+     * Updates robot {@code i} with the total distance it travelled at
+     * {@code aTime}, counting the laps it completed since the last
+     * update.
+     */
+    public void update(int i, double total, double aTime) {
+        double previous = totalDistance[i];
+        while (total >= lapsCompleted[i] + 1) {
+            int lap = lapsCompleted[i] + 1;
+            // Interpolate the moment the start line was crossed
+            double crossing = lastTime[i] + (lap - previous)
+                    / (total - previous) * (aTime - lastTime[i]);
+            lastLapTime[i] = crossing - lastCrossing[i];
+            if (!(bestLapTime[i] <= lastLapTime[i])) {
+                bestLapTime[i] = lastLapTime[i];
+            }
+            lastCrossing[i] = crossing;
+            lapsCompleted[i] = lap;
+            if (lap == laps) {
+                finishTime[i] = crossing;
+                // Robots that finish in the same tick are updated in the
+                // order of their index, so place this one by its time
+                int position = finishedCount++;
+                while (position > 0 && finishTime[finishOrder[position - 1]] > crossing) {
+                    finishOrder[position] = finishOrder[position - 1];
+                    position--;
+                }
+                finishOrder[position] = i;
+            }
+        }
+        totalDistance[i] = total;
+        lastTime[i] = aTime;
+    }
+
+    /**
+     * Restores the order of the leaderboard after the updates of a
+     * tick.
+     */
+    public void rank() {
+        for (int i = 1; i < n; i++) {
+            int robot = leaderboard[i];
+            int j = i;
+            while (j > 0 && isAhead(robot, leaderboard[j - 1])) {
+                leaderboard[j] = leaderboard[j - 1];
+                j--;
+            }
+            leaderboard[j] = robot;
+        }
+    }
+
+    /**
+     * Returns whether robot {@code a} ranks before robot {@code b}.
+     * Finished robots rank by their finish time, before all robots
+     * that are still racing.
+     */
+    private boolean isAhead(int a, int b) {
+        boolean aFinished = !Double.isNaN(finishTime[a]);
+        boolean bFinished = !Double.isNaN(finishTime[b]);
+        if (aFinished || bFinished) {
+            return aFinished && (!bFinished || finishTime[a] < finishTime[b]);
+        }
+        return totalDistance[a] > totalDistance[b];
+    }
+
+    /**
+     * Returns the robot at {@code rank} on the leaderboard, 0 being
+     * the leader.
+     */
+    public int getRobotAtRank(int rank) {
+        return leaderboard[rank];
+    }
+
+    /**
+     * Returns the number of laps completed by robot {@code i}.
+     */
+    public int getLapsCompleted(int i) {
+        return lapsCompleted[i];
+    }
+
+    /**
+     * Returns the duration of the last lap of robot {@code i}, or NaN
+     * before its first lap.
+     */
+    public double getLastLapTime(int i) {
+        return lastLapTime[i];
+    }
+
+    /**
+     * Returns the duration of the fastest lap of robot {@code i}, or
+     * NaN before its first lap.
+     */
+    public double getBestLapTime(int i) {
+        return bestLapTime[i];
+    }
+
+    /**
+     * Returns the time at which robot {@code i} finished, or NaN while
+     * it is still racing.
+     */
+    public double getFinishTime(int i) {
+        return finishTime[i];
+    }
+
+    /**
+     * Returns the number of robots that finished.
+     */
+    public int getFinishedCount() {
+        return finishedCount;
+    }
+
+    /**
+     * Returns the robot that finished at {@code position}, 0 being the
+     * winner.
+     */
+    public int getRobotAtFinish(int position) {
+        return finishOrder[position];
+    }
+
+    /**
+     * Returns whether all robots finished the race.
+     */
+    public boolean isFinished() {
+        return laps > 0 && finishedCount == n;
+    }
+
+    /**
+     * Returns the final results, one line per robot in order of
+     * finishing.
+     */
+    public String getResults() {
+        StringBuilder result = new StringBuilder();
+        for (int position = 0; position < finishedCount; position++) {
+            int robot = finishOrder[position];
+            result.append(String.format("%d. robot %d  %.2fs  best lap %.2fs%n",
+                    position + 1, robot, finishTime[robot], bestLapTime[robot]));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,295 @@
+package robotrace.core;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the robots in the ground plane, for picking them
+ * with a ray.
+ *
+ * Every robot is an oriented box, given in its own frame: x to the
+ * side, y along its heading and z up. The grid is rebuilt from the
+ * positions with a counting sort, so updating it takes linear time
+ * without allocating once it has grown. A robot is stored in every
+ * cell that its bounding circle overlaps. A pick walks the cells along
+ * the ray in order, and stops at the first cell that lies beyond the
+ * nearest box hit so far.
+ */
+public class RobotGrid {
+
+    /** Largest number of cells along an axis. */
+    private final static int MAX_CELLS = 128;
+
+    /** Desired size of a cell. */
+    private final double cellSize;
+
+    /** Box of a robot in its own frame: min x, y, z and max x, y, z. */
+    private final double[] box = new double[6];
+
+    /** Radius of the circle around a robot that contains its box. */
+    private double radius;
+
+    /** Number of robots. */
+    private int n = 0;
+
+    /** Position of each robot. */
+    private double[] x = new double[0], y = new double[0], z = new double[0];
+
+    /** Cosine and sine of the heading of each robot. */
+    private double[] cos = new double[0], sin = new double[0];
+
+    /** Query in which each robot was last tested, to test it only once. */
+    private int[] tested = new int[0];
+
+    /** Number of the current query. */
+    private int query = 0;
+
+    /** Corner of the grid, and size of its cells. */
+    private double gridX, gridY, cellWidth, cellHeight;
+
+    /** Number of cells along x and y. */
+    private int columns = 1, rows = 1;
+
+    /** Index in {@code cellRobots} of the first robot of each cell, and of the end. */
+    private int[] cellStart = new int[2];
+
+    /** The robots of the cells, cell after cell. */
+    private int[] cellRobots = new int[0];
+
+    /** Ray parameter of the last hit. */
+    private double distance;
+
+    /** Range of the ray parameter within the grid, reused between picks. */
+    private final double[] raySpan = new double[2];
+
+    /** Range of the ray parameter within a box, reused between tests. */
+    private final double[] boxSpan = new double[2];
+
+    /**
+     * Constructs an empty grid with cells of about {@code cellSize}.
+     */
+    public RobotGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Sets the box of a robot in its own frame, with the robot at the
+     * origin.
+     */
+    public void setBox(double minX, double minY, double minZ,
+                       double maxX, double maxY, double maxZ) {
+        box[0] = minX;
+        box[1] = minY;
+        box[2] = minZ;
+        box[3] = maxX;
+        box[4] = maxY;
+        box[5] = maxZ;
+        radius = Math.sqrt(Math.max(minX * minX, maxX * maxX)
+                           + Math.max(minY * minY, maxY * maxY));
+    }
+
+    /**
+     * Rebuilds the grid for the first {@code n} robots, at the given
+     * positions and headings. A heading of 0 faces the positive y axis,
+     * and increases counterclockwise.
+     */
+    public void update(int n, double[] x, double[] y, double[] z, double[] heading) {
+        this.n = n;
+        if (this.x.length < n) {
+            this.x = new double[n];
+            this.y = new double[n];
+            this.z = new double[n];
+            cos = new double[n];
+            sin = new double[n];
+            tested = new int[n];
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            this.x[i] = x[i];
+            this.y[i] = y[i];
+            this.z[i] = z[i];
+            cos[i] = Math.cos(heading[i]);
+            sin[i] = Math.sin(heading[i]);
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (0 == n) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        // Cover the bounding circles of all robots
+        gridX = minX - radius;
+        gridY = minY - radius;
+        double width = maxX - minX + 2 * radius;
+        double height = maxY - minY + 2 * radius;
+        columns = Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil(width / cellSize)));
+        rows = Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil(height / cellSize)));
+        cellWidth = Math.max(width / columns, 1e-9);
+        cellHeight = Math.max(height / rows, 1e-9);
+
+        // Count the robots per cell, then place them
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        }
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        for (int i = 0; i < n; i++) {
+            for (int row = getRow(y[i] - radius); row <= getRow(y[i] + radius); row++) {
+                for (int column = getColumn(x[i] - radius); column <= getColumn(x[i] + radius); column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        if (cellRobots.length < cellStart[cells]) {
+            cellRobots = new int[cellStart[cells]];
+        }
+        for (int i = 0; i < n; i++) {
+            for (int row = getRow(y[i] - radius); row <= getRow(y[i] + radius); row++) {
+                for (int column = getColumn(x[i] - radius); column <= getColumn(x[i] + radius); column++) {
+                    // the start of a cell serves as its fill pointer
+                    cellRobots[cellStart[row * columns + column]++] = i;
+                }
+            }
+        }
+        // the fill pointers now hold the ends of the cells; shift them back
+        for (int cell = cells; cell > 0; cell--) {
+            cellStart[cell] = cellStart[cell - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    /**
+     * Returns the column of the cell that contains {@code x}, clamped to
+     * the grid.
+     */
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - gridX) / cellWidth)));
+    }
+
+    /**
+     * Returns the row of the cell that contains {@code y}, clamped to
+     * the grid.
+     */
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - gridY) / cellHeight)));
+    }
+
+    /**
+     * Returns the first robot that the ray from (ox, oy, oz) in direction
+     * (dx, dy, dz) hits, or -1 if it hits none. The ray parameter of the
+     * hit is available from {@link #getDistance()}.
+     */
+    public int pick(double ox, double oy, double oz, double dx, double dy, double dz) {
+        distance = Double.POSITIVE_INFINITY;
+        if (0 == n) {
+            return -1;
+        }
+        query++;
+
+        // Clip the ray to the grid in the ground plane
+        double[] span = raySpan;
+        span[0] = 0;
+        span[1] = Double.POSITIVE_INFINITY;
+        if (!clip(ox, dx, gridX, gridX + columns * cellWidth, span)
+                || !clip(oy, dy, gridY, gridY + rows * cellHeight, span)) {
+            return -1;
+        }
+        double t = span[0];
+        int column = getColumn(ox + t * dx);
+        int row = getRow(oy + t * dy);
+
+        // Walk the cells along the ray
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double deltaX = 0 == dx ? Double.POSITIVE_INFINITY : cellWidth / Math.abs(dx);
+        double deltaY = 0 == dy ? Double.POSITIVE_INFINITY : cellHeight / Math.abs(dy);
+        double nextX = 0 == dx ? Double.POSITIVE_INFINITY
+                : (gridX + (column + (dx > 0 ? 1 : 0)) * cellWidth - ox) / dx;
+        double nextY = 0 == dy ? Double.POSITIVE_INFINITY
+                : (gridY + (row + (dy > 0 ? 1 : 0)) * cellHeight - oy) / dy;
+        int best = -1;
+        while (true) {
+            int cell = row * columns + column;
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                int i = cellRobots[k];
+                if (tested[i] == query) {
+                    continue;
+                }
+                tested[i] = query;
+                double hit = intersect(i, ox, oy, oz, dx, dy, dz);
+                if (hit < distance) {
+                    distance = hit;
+                    best = i;
+                }
+            }
+
+            // Boxes in further cells are further away than a hit before
+            // the end of this cell
+            double exit = Math.min(Math.min(nextX, nextY), span[1]);
+            if (distance <= exit || exit >= span[1]) {
+                return best;
+            }
+            if (nextX < nextY) {
+                column += stepX;
+                nextX += deltaX;
+            } else {
+                row += stepY;
+                nextY += deltaY;
+            }
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * Returns the ray parameter of the last hit of {@link #pick}, or
+     * infinity if it missed.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the ray parameter at which the ray hits the box of robot
+     * {@code i}, or infinity if it misses.
+     */
+    private double intersect(int i, double ox, double oy, double oz,
+                             double dx, double dy, double dz) {
+        // Into the frame of the robot
+        double rx = ox - x[i];
+        double ry = oy - y[i];
+        double c = cos[i];
+        double s = sin[i];
+        double[] span = boxSpan;
+        span[0] = 0;
+        span[1] = Double.POSITIVE_INFINITY;
+        if (clip(rx * c + ry * s, dx * c + dy * s, box[0], box[3], span)
+                && clip(ry * c - rx * s, dy * c - dx * s, box[1], box[4], span)
+                && clip(oz - z[i], dz, box[2], box[5], span)) {
+            return span[0];
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Narrows {@code span}, the range of the ray parameter, to where the
+     * ray from {@code o} in direction {@code d} lies within [min, max]
+     * along one axis. Returns whether the range is still non-empty.
+     */
+    private static boolean clip(double o, double d, double min, double max, double[] span) {
+        if (0 == d) {
+            return o >= min && o <= max;
+        }
+        double t0 = (min - o) / d;
+        double t1 = (max - o) / d;
+        span[0] = Math.max(span[0], Math.min(t0, t1));
+        span[1] = Math.min(span[1], Math.max(t0, t1));
+        return span[0] <= span[1];
+    }
+}
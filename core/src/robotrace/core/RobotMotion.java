@@ -0,0 +1,138 @@
+package robotrace.core;
+
+import robotrace.Vector;
+
+/**
+ * Motion of a robot along the track.
+ *
+ * This is the part of a robot that does not need OpenGL, so that races
+ * can be simulated without a window.
+ */
+public class RobotMotion {
+
+    /** Length of a robot, the depth of its torso. */
+    public final static double LENGTH = 1.5;
+
+    /**
+     * Width of a robot, from the widest body part (the head, since its
+     * eyes are on the side).
+     */
+    public final static double WIDTH = 0.4;
+
+    /** Number of lanes of a track. */
+    public final static int LANES = 4;
+
+    /** The identifier of this robot, counted from 0. */
+    protected final int id;
+
+    /** Geometry of the track on which the robot races. */
+    private final TrackGeometry track;
+    
+    /** Distance that the robot travelled on the track.
+     * This distance is taken in the range [0,1).
+     */
+    private double distance = 0;
+
+    /** Total distance that the robot travelled, without wrapping. */
+    private double totalDistance = 0;
+    
+    /** Current speed of the robot in units/seconds. */
+    private double speed = 0;
+    
+    /** The last time the robot position was updated. */
+    private double lastATime = 0;
+    
+    /** The position this robot had when last updated. */
+    private Vector lastCalculatedPosition = null;
+    
+    /** The position tangent this robot had when last updated. */
+    private Vector lastCalculatedPositionTangent = null;
+
+    /**
+     * Constructs the motion of robot {@code id} on the given track.
+     */
+    public RobotMotion(int id, TrackGeometry track) {
+        this.id = id;
+        this.track = track;
+    }
+
+    /**
+     * Returns the distance travelled on the track, in the range [0,1).
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the total distance travelled, where every completed lap
+     * counts as 1.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * Returns the last calculated position of this robot.
+     */
+    public Vector getLastCalculatedPosition() {
+        return lastCalculatedPosition;
+    }
+    
+    /**
+     * Returns the last calculated position tangent of this robot.
+     */
+    public Vector getLastCalculatedPositionTangent() {
+        return lastCalculatedPositionTangent;
+    }
+    
+    /**
+     * Calculate the new position of this robot.
+     * 
+     * @param aTime Time for animation and movement, in seconds
+     * @param trackNr Track on which the robot races
+     */
+    public void updatePosition(double aTime, int trackNr) {
+        distance += (aTime-lastATime)*speed; // Increment the distance by the time passed times the speed
+        totalDistance += (aTime-lastATime)*speed; // Keep track of the laps that were completed
+        distance = distance-Math.floor(distance); // Make sure the distance is still in the range [0,1)
+        lastATime = aTime; // Update the last aTime
+        lastCalculatedPosition = track.getLanePoint(trackNr, distance, getLane()); // update the position Vector object
+        lastCalculatedPositionTangent = track.getLaneTangent(trackNr, distance);
+
+        // TODO: remove this
+        //if (id == 0) {
+            //lastCalculatedPosition = Vector.O;
+        //}
+    }
+
+    /**
+     * Places this robot at {@code totalDistance}, as received from a
+     * race that runs elsewhere, instead of moving it by its speed.
+     *
+     * @param totalDistance Total distance travelled
+     * @param trackNr Track on which the robot races
+     */
+    public void moveTo(double totalDistance, int trackNr) {
+        this.totalDistance = totalDistance;
+        distance = totalDistance-Math.floor(totalDistance);
+        lastCalculatedPosition = track.getLanePoint(trackNr, distance, getLane());
+        lastCalculatedPositionTangent = track.getLaneTangent(trackNr, distance);
+    }
+
+    /**
+     * Returns the lane of this robot, as the {@code curve} offset
+     * from the inner edge of the track. Robots beyond the number of
+     * lanes share them.
+     */
+    public double getLane() {
+        return id % LANES + 0.5;
+    }
+
+    /**
+     * Changes the speed of this robot, from its last position update
+     * on.
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+}
@@ -0,0 +1,119 @@
+package robotrace.core;
+
+/**
+ * Monotonic clock of the simulation, counting nanoseconds of simulated
+ * time from {@code System.nanoTime()}. It can be paused and resumed,
+ * and runs at a time scale relative to the wall clock. Unlike the
+ * float seconds of the base class, it keeps its precision in sessions
+ * that run for days.
+ *
+ * The clock is read by the simulation and the rendering, and changed
+ * from the input, so all methods are synchronized.
+ */
+public class SimulationClock {
+
+    /** Simulated time at the anchor, in nanoseconds. */
+    private long anchorNanos = 0;
+
+    /** Value of {@code System.nanoTime()} at the anchor. */
+    private long anchorSystemNanos = System.nanoTime();
+
+    /** Simulated seconds per second of wall clock time. */
+    private double timeScale;
+
+    /** Whether the clock is paused. */
+    private boolean paused = false;
+
+    /**
+     * Constructs a running clock at zero, with the given time scale.
+     */
+    public SimulationClock(double timeScale) {
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Returns the simulated time, in nanoseconds.
+     */
+    public synchronized long getNanos() {
+        if (paused) {
+            return anchorNanos;
+        }
+        return anchorNanos
+                + (long) ((System.nanoTime() - anchorSystemNanos) * timeScale);
+    }
+
+    /**
+     * Returns the simulated time, in seconds.
+     */
+    public double getSeconds() {
+        return getNanos() / 1e9;
+    }
+
+    /**
+     * Sets the simulated time to {@code nanos}.
+     */
+    public synchronized void setNanos(long nanos) {
+        anchorNanos = nanos;
+        anchorSystemNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the wall clock time until the simulated time reaches
+     * {@code nanos}, in nanoseconds, or Long.MAX_VALUE if the clock is
+     * paused before that.
+     */
+    public synchronized long getSystemNanosUntil(long nanos) {
+        long remaining = nanos - getNanos();
+        if (remaining <= 0) {
+            return 0;
+        }
+        if (paused || 0 == timeScale) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil(remaining / timeScale);
+    }
+
+    /**
+     * Stops the clock.
+     */
+    public synchronized void pause() {
+        if (!paused) {
+            setNanos(getNanos());
+            paused = true;
+        }
+    }
+
+    /**
+     * Starts the clock again where it was paused.
+     */
+    public synchronized void resume() {
+        if (paused) {
+            paused = false;
+            anchorSystemNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns whether the clock is paused.
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets the number of simulated seconds per second of wall clock
+     * time, from now on.
+     */
+    public synchronized void setTimeScale(double timeScale) {
+        setNanos(getNanos());
+        this.timeScale = Math.max(0, timeScale);
+    }
+
+    /**
+     * Returns the number of simulated seconds per second of wall clock
+     * time.
+     */
+    public synchronized double getTimeScale() {
+        return timeScale;
+    }
+}
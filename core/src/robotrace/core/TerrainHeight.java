@@ -0,0 +1,14 @@
+package robotrace.core;
+
+/**
+ * Height of the terrain around the tracks, as a function of x and y.
+ */
+public class TerrainHeight {
+
+    /**
+     * Returns the height of the terrain at a specific x and y.
+     */
+    public static double getHeight(double x, double y) {
+        return 0.6*Math.cos(0.3*x+0.2*y)+0.4*Math.cos(x-0.5*y);
+    }
+}
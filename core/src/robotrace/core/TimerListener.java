@@ -0,0 +1,12 @@
+package robotrace.core;
+
+/**
+ * Receives the expiry of timers of a {@link TimerWheel}.
+ */
+public interface TimerListener {
+
+    /**
+     * Called when {@code timer} expires at simulation {@code tick}.
+     */
+    void expire(int timer, long tick);
+}
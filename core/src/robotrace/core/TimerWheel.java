@@ -0,0 +1,184 @@
+package robotrace.core;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timer wheel, keyed on simulation ticks.
+ *
+ * Scheduling and cancelling a timer take constant time, and advancing
+ * a tick only looks at the timers that expire in it, plus the timers
+ * that cascade down from a coarser level once every 64 ticks. So the
+ * cost does not depend on how many timers are pending. Timers are
+ * created up front and then rescheduled, in intrusive linked lists
+ * of int arrays, so nothing is allocated while running.
+ */
+public class TimerWheel {
+
+    /** Number of bits of the slot index on each level. */
+    private final static int SLOT_BITS = 6;
+
+    /** Number of slots on each level. */
+    private final static int SLOTS = 1 << SLOT_BITS;
+
+    /** Mask of the slot index on a level. */
+    private final static int SLOT_MASK = SLOTS - 1;
+
+    /** Number of levels, which spans 2^24 ticks. */
+    private final static int LEVELS = 4;
+
+    /** Marks the end of a list, and unscheduled timers. */
+    private final static int NONE = -1;
+
+    /** First timer in each slot, level by level. */
+    private final int[] head = new int[LEVELS * SLOTS];
+
+    /** Next and previous timer in the slot of each timer. */
+    private int[] next = new int[16], prev = new int[16];
+
+    /** Slot of each timer, or NONE if it is not scheduled. */
+    private int[] slot = new int[16];
+
+    /** Tick at which each timer expires. */
+    private long[] expiry = new long[16];
+
+    /** Listener of each timer. */
+    private TimerListener[] listeners = new TimerListener[16];
+
+    /** Number of timers. */
+    private int timerCount = 0;
+
+    /** The last tick that was advanced to. */
+    private long now = 0;
+
+    /**
+     * Constructs a wheel without timers, at tick 0.
+     */
+    public TimerWheel() {
+        Arrays.fill(head, NONE);
+    }
+
+    /**
+     * Creates an unscheduled timer that notifies {@code listener}, and
+     * returns its identifier.
+     */
+    public int createTimer(TimerListener listener) {
+        if (timerCount == slot.length) {
+            int capacity = 2 * timerCount;
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            slot = Arrays.copyOf(slot, capacity);
+            expiry = Arrays.copyOf(expiry, capacity);
+            listeners = Arrays.copyOf(listeners, capacity);
+        }
+        slot[timerCount] = NONE;
+        listeners[timerCount] = listener;
+        return timerCount++;
+    }
+
+    /**
+     * Returns the last tick that was advanced to.
+     */
+    public long getTick() {
+        return now;
+    }
+
+    /**
+     * Schedules {@code timer} to expire at {@code tick}, replacing an
+     * earlier schedule. Ticks that passed expire on the next tick.
+     */
+    public void schedule(int timer, long tick) {
+        cancel(timer);
+        expiry[timer] = Math.max(tick, now + 1);
+        insert(timer);
+    }
+
+    /**
+     * Cancels {@code timer}, if it is scheduled.
+     */
+    public void cancel(int timer) {
+        int s = slot[timer];
+        if (s == NONE) {
+            return;
+        }
+        if (prev[timer] == NONE) {
+            head[s] = next[timer];
+        } else {
+            next[prev[timer]] = next[timer];
+        }
+        if (next[timer] != NONE) {
+            prev[next[timer]] = prev[timer];
+        }
+        slot[timer] = NONE;
+    }
+
+    /**
+     * Returns whether {@code timer} is scheduled.
+     */
+    public boolean isScheduled(int timer) {
+        return slot[timer] != NONE;
+    }
+
+    /**
+     * Advances to {@code tick}, notifying the listeners of all timers
+     * that expire on the way, in order of their ticks.
+     */
+    public void advance(long tick) {
+        while (now < tick) {
+            now++;
+            // Bring the timers of the coarser levels down when a finer
+            // level wraps around
+            for (int level = 1; level < LEVELS; level++) {
+                if ((now & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) (now >> (SLOT_BITS * level)) & SLOT_MASK);
+            }
+            // Listeners may schedule and cancel timers, but never into
+            // this slot, as those expire on a later tick
+            int s = (int) now & SLOT_MASK;
+            int timer;
+            while ((timer = head[s]) != NONE) {
+                cancel(timer);
+                listeners[timer].expire(timer, now);
+            }
+        }
+    }
+
+    /**
+     * Moves all timers in {@code index} on {@code level} to the levels
+     * below it.
+     */
+    private void cascade(int level, int index) {
+        int s = level * SLOTS + index;
+        int timer = head[s];
+        head[s] = NONE;
+        while (timer != NONE) {
+            int following = next[timer];
+            slot[timer] = NONE;
+            insert(timer);
+            timer = following;
+        }
+    }
+
+    /**
+     * Adds {@code timer} to the slot of its expiry.
+     */
+    private void insert(int timer) {
+        long delta = Math.max(expiry[timer] - now, 0);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        // Timers beyond the last level wait in it, and are placed
+        // again every time they cascade
+        long at = Math.min(expiry[timer], now + (1L << (SLOT_BITS * LEVELS)) - 1);
+        int s = level * SLOTS + ((int) (at >> (SLOT_BITS * level)) & SLOT_MASK);
+        slot[timer] = s;
+        prev[timer] = NONE;
+        next[timer] = head[s];
+        if (head[s] != NONE) {
+            prev[head[s]] = timer;
+        }
+        head[s] = timer;
+    }
+}
@@ -0,0 +1,127 @@
+package robotrace.core;
+
+import robotrace.Vector;
+
+/**
+ * Frames along a track: the point on its inner edge, the unit tangent
+ * and the unit lateral normal towards its outer edge, sampled at
+ * {@code t = i / SAMPLES}.
+ *
+ * Between samples the frames are interpolated linearly. The point on
+ * any lane is then the point plus the normal scaled by the offset of
+ * the lane, without evaluating the curve and its tangent again.
+ */
+public class TrackFrames {
+
+    /**
+     * Number of samples along the track. A multiple of the segment
+     * counts of all quality levels, so the meshes hit the samples.
+     */
+    public final static int SAMPLES = 600;
+
+    /** Point on the inner edge at each sample, x, y and z interleaved. */
+    private final double[] points = new double[3 * (SAMPLES + 1)];
+
+    /** Unit tangent at each sample. */
+    private final double[] tangents = new double[3 * (SAMPLES + 1)];
+
+    /** Unit lateral normal at each sample, towards the outer edge. */
+    private final double[] normals = new double[3 * (SAMPLES + 1)];
+
+    /**
+     * Samples the frames of track {@code trackNr} of {@code track}.
+     */
+    public TrackFrames(TrackGeometry track, int trackNr) {
+        update(track, trackNr, 0, 1);
+    }
+
+    /**
+     * Samples the frames of track {@code trackNr} of {@code track} again
+     * where {@code tFrom <= t <= tTo}.
+     */
+    public void update(TrackGeometry track, int trackNr, double tFrom, double tTo) {
+        int from = (int) Math.floor(tFrom * SAMPLES);
+        int to = (int) Math.min(Math.ceil(tTo * SAMPLES), SAMPLES);
+        for (int i = from; i <= to; i++) {
+            setSample(track, trackNr, i);
+        }
+        // The first and the last sample are the same frame
+        if (0 == from || SAMPLES == to) {
+            setSample(track, trackNr, 0);
+            setSample(track, trackNr, SAMPLES);
+        }
+    }
+
+    /**
+     * Samples frame {@code i} of track {@code trackNr} of {@code track}.
+     */
+    private void setSample(TrackGeometry track, int trackNr, int i) {
+        // The last sample closes the ring
+        double t = (i == SAMPLES) ? 0 : i / ((double) SAMPLES);
+        Vector point = track.getPointOnCurve(trackNr, t, 0);
+        Vector normal = track.getPointOnCurve(trackNr, t, 1).subtract(point);
+        Vector tangent = track.getTangentOnCurve(trackNr, t).normalized();
+        int s = 3 * i;
+        points[s] = point.x();
+        points[s + 1] = point.y();
+        points[s + 2] = point.z();
+        tangents[s] = tangent.x();
+        tangents[s + 1] = tangent.y();
+        tangents[s + 2] = tangent.z();
+        normals[s] = normal.x();
+        normals[s + 1] = normal.y();
+        normals[s + 2] = normal.z();
+    }
+
+    /**
+     * Stores the frame at {@code t} in {@code frame} from {@code offset}
+     * on: the point on the inner edge followed by the lateral normal.
+     */
+    public void getFrame(double t, double[] frame, int offset) {
+        double sample = (t - Math.floor(t)) * SAMPLES;
+        int i = Math.min((int) sample, SAMPLES - 1);
+        double f = sample - i;
+        int s = 3 * i;
+        for (int axis = 0; axis < 3; axis++) {
+            frame[offset + axis] = points[s + axis]
+                    + f * (points[s + 3 + axis] - points[s + axis]);
+            frame[offset + 3 + axis] = normals[s + axis]
+                    + f * (normals[s + 3 + axis] - normals[s + axis]);
+        }
+    }
+
+    /**
+     * Returns the point on lane {@code curve} at {@code t}.
+     */
+    public Vector getPoint(double t, double curve) {
+        double sample = (t - Math.floor(t)) * SAMPLES;
+        int i = Math.min((int) sample, SAMPLES - 1);
+        double f = sample - i;
+        int s = 3 * i;
+        return new Vector(lanePoint(s, f, curve), lanePoint(s + 1, f, curve),
+                          lanePoint(s + 2, f, curve));
+    }
+
+    /**
+     * Returns the unit tangent at {@code t}.
+     */
+    public Vector getTangent(double t) {
+        double sample = (t - Math.floor(t)) * SAMPLES;
+        int i = Math.min((int) sample, SAMPLES - 1);
+        double f = sample - i;
+        int s = 3 * i;
+        return new Vector(tangents[s] + f * (tangents[s + 3] - tangents[s]),
+                          tangents[s + 1] + f * (tangents[s + 4] - tangents[s + 1]),
+                          tangents[s + 2] + f * (tangents[s + 5] - tangents[s + 2]));
+    }
+
+    /**
+     * Returns coordinate {@code s} of the point on lane {@code curve},
+     * a fraction {@code f} of the way to the next sample.
+     */
+    private double lanePoint(int s, double f, double curve) {
+        double point = points[s] + f * (points[s + 3] - points[s]);
+        double normal = normals[s] + f * (normals[s + 3] - normals[s]);
+        return point + normal * curve;
+    }
+}
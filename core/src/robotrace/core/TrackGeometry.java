@@ -0,0 +1,563 @@
+package robotrace.core;
+
+import robotrace.Vector;
+
+/**
+ * Geometry of the race tracks, made from Bezier segments.
+ *
+ * This holds everything about the tracks that does not need OpenGL,
+ * so that races can be simulated without a window.
+ */
+public class TrackGeometry {
+
+    /** Number of segments of the spatial indexes over the tracks. */
+    public final static int INDEX_SEGMENTS = 300;
+
+    /** Number of samples of the curvature tables over the tracks. */
+    public final static int CURVATURE_SAMPLES = 300;
+
+    /**
+     * Largest curvature in the tables, where coinciding control points
+     * would make it infinite.
+     */
+    public final static double MAX_CURVATURE = 1;
+
+    /** Array with control points for the O-track. */
+    private Vector[] controlPointsOTrack = new Vector[] {
+        new Vector(-12, -12, 2),
+        new Vector(-12, -4, 2),
+        new Vector(-12, 4, 2),
+        new Vector(-12, 12, 2),
+        new Vector(-12, 24, 2),
+        new Vector(12, 24, 2),
+        new Vector(12, 12, 2),
+        new Vector(12, 4, 2),
+        new Vector(12, -4, 2),
+        new Vector(12, -12, 2),
+        new Vector(12, -24, 2),
+        new Vector(-12, -24, 2),
+        new Vector(-12, -12, 2)
+    };
+
+    /** Array with control points for the L-track. */
+    private Vector[] controlPointsLTrack = new Vector[] {
+        new Vector(-7.5, 7.5, 2),
+        new Vector(-7.5, 12.5, 2),
+        new Vector(0, 12.5, 2),
+        new Vector(0, 7.5, 2),
+        new Vector(0, 2.5, 2),
+        new Vector(2.5, 0, 2),
+        new Vector(7.5, 0, 2),
+        new Vector(12.5, 0, 2),
+        new Vector(12.5, -7.5, 2),
+        new Vector(7.5, -7.5, 2),
+        new Vector(5, -7.5, 2),
+        new Vector(2.5, -7.5, 2),
+        new Vector(0, -7.5, 2),
+        new Vector(-7.5, -7.5, 2),
+        new Vector(-7.5, -7.5, 2),
+        new Vector(-7.5, 0, 2),
+        new Vector(-7.5, 2.5, 2),
+        new Vector(-7.5, 5, 2),
+        new Vector(-7.5, 7.5, 2),
+    };
+
+    /** Array with control points for the C-track. */
+    private Vector[] controlPointsCTrack = new Vector[] {
+        new Vector(-7.5, 15, 2),
+        new Vector(-5, 15, 2),
+        new Vector(-2.5, 15, 2),
+        new Vector(0, 15, 2),
+        new Vector(7.5, 15, 2),
+        new Vector(7.5, 7.5, 2),
+        new Vector(0, 7.5, 2),
+        new Vector(-7.5, 7.5, 2),
+        new Vector(-7.5, -7.5, 2),
+        new Vector(0, -7.5, 2),
+        new Vector(7.5, -7.5, 2),
+        new Vector(7.5, -15, 2),
+        new Vector(0, -15, 2),
+        new Vector(-2.5, -15, 2),
+        new Vector(-5, -15, 2),
+        new Vector(-7.5, -15, 2),
+        new Vector(-10, -15, 2),
+        new Vector(-15, -12.5, 2),
+        new Vector(-15, -7.5, 2),
+        new Vector(-15, -2.5, 2),
+        new Vector(-15, 2.5, 2),
+        new Vector(-15, 7.5, 2),
+        new Vector(-15, 10, 2),
+        new Vector(-10, 15, 2),
+        new Vector(-7.5, 15, 2)
+    };
+
+    /** Array with control points for the custom track. */
+    private Vector[] controlPointsCustomTrack = new Vector[] {
+        new Vector(0, 15, 2),
+        new Vector(2.5, 15, 2),
+        new Vector(5, 15, 2),
+        new Vector(7.5, 15, 2),
+        new Vector(15, 15, 2),
+        new Vector(15, 7.5, 2),
+        new Vector(7.5, 7.5, 2),
+        new Vector(0, 7.5, 2),
+        new Vector(0, -7.5, 2),
+        new Vector(7.5, -7.5, 2),
+        new Vector(15, -7.5, 2),
+        new Vector(15, -15, 2),
+        new Vector(7.5, -15, 2),
+        new Vector(5, -15, 2),
+        new Vector(2.5, -15, 2),
+        new Vector(0, -15, 2),
+        new Vector(-2.5, -15, 2),
+        new Vector(-5, -15, 2),
+        new Vector(-7.5, -15, 2),
+        new Vector(-15, -15, 2),
+        new Vector(-15, -7.5, 2),
+        new Vector(-7.5, -7.5, 2),
+        new Vector(0, -7.5, 2),
+        new Vector(0, 7.5, 2),
+        new Vector(-7.5, 7.5, 2),
+        new Vector(-15, 7.5, 2),
+        new Vector(-15, 15, 2),
+        new Vector(-7.5, 15, 2),
+        new Vector(-5, 15, 2),
+        new Vector(-2.5, 15, 2),
+        new Vector(0, 15, 2)
+    };
+    
+    /** Spatial indexes over the tracks, built on first use. */
+    private TrackIndex[] trackIndices = new TrackIndex[5];
+
+    /**
+     * Curvature of each track towards its lanes, sampled at
+     * {@code t = i / CURVATURE_SAMPLES} for i in [0, CURVATURE_SAMPLES].
+     */
+    private final double[][] curvatures = new double[5][];
+
+    /** Frames along each track. */
+    private final TrackFrames[] frames = new TrackFrames[5];
+
+    /**
+     * Constructs the geometry of the tracks, and tabulates their
+     * frames and curvature.
+     */
+    public TrackGeometry() {
+        for (int trackNr = 0; trackNr < frames.length; trackNr++) {
+            frames[trackNr] = new TrackFrames(this, trackNr);
+        }
+        for (int trackNr = 0; trackNr < curvatures.length; trackNr++) {
+            curvatures[trackNr] = new double[CURVATURE_SAMPLES + 1];
+            updateCurvature(trackNr, 0, 1);
+        }
+    }
+
+    /**
+     * Computes the curvature table of the given track again where
+     * {@code tFrom <= t <= tTo}.
+     */
+    private void updateCurvature(int trackNr, double tFrom, double tTo) {
+        double[] table = curvatures[trackNr];
+        int from = (int) Math.floor(tFrom * CURVATURE_SAMPLES);
+        int to = (int) Math.min(Math.ceil(tTo * CURVATURE_SAMPLES), CURVATURE_SAMPLES);
+        for (int i = from; i <= to; i++) {
+            double curvature = getCurvatureOnCurve(trackNr,
+                    (double) (i % CURVATURE_SAMPLES) / CURVATURE_SAMPLES);
+            table[i] = Math.max(-MAX_CURVATURE, Math.min(curvature, MAX_CURVATURE));
+        }
+        // The first and the last sample are the same point
+        if (0 == from) {
+            table[CURVATURE_SAMPLES] = table[0];
+        } else if (CURVATURE_SAMPLES == to) {
+            table[0] = table[CURVATURE_SAMPLES];
+        }
+    }
+
+    /**
+     * Moves control point {@code index} of the given track to
+     * {@code point}, and updates the frames, curvature and spatial
+     * index where the Bezier segments it controls lie. The first and
+     * the last control point close the track, so they move together.
+     * Synchronized, since the simulation reads the tables.
+     *
+     * @throws IllegalArgumentException if the track has no control
+     *         point {@code index}; nothing is changed then.
+     */
+    public synchronized void moveControlPoint(int trackNr, int index, Vector point) {
+        Vector[] currentControlPoints = getControlPoints(trackNr);
+        if (null == currentControlPoints) {
+            throw new IllegalArgumentException("Track " + trackNr + " has no control points");
+        }
+        if (index < 0 || index >= currentControlPoints.length) {
+            throw new IllegalArgumentException("Track " + trackNr + " has no control point " + index);
+        }
+        int last = currentControlPoints.length-1;
+        currentControlPoints[index] = point;
+        if (0 == index) {
+            currentControlPoints[last] = point;
+        } else if (last == index) {
+            currentControlPoints[0] = point;
+        }
+        int numberOfSegments = last/3;
+        for (int segment = 0; segment < numberOfSegments; segment++) {
+            boolean controlled = (index >= segment*3 && index <= segment*3+3)
+                    || ((0 == index || last == index)
+                        && (0 == segment || numberOfSegments-1 == segment));
+            if (controlled) {
+                updateRange(trackNr, ((double) segment)/numberOfSegments,
+                        ((double) segment+1)/numberOfSegments);
+            }
+        }
+    }
+
+    /**
+     * Updates the tables of the given track where
+     * {@code tFrom <= t <= tTo}, after its curve changed there.
+     */
+    protected void updateRange(int trackNr, double tFrom, double tTo) {
+        frames[trackNr].update(this, trackNr, tFrom, tTo);
+        updateCurvature(trackNr, tFrom, tTo);
+        if (null != trackIndices[trackNr]) {
+            trackIndices[trackNr].update(tFrom, tTo);
+        }
+    }
+
+    /**
+     * Returns the frames along the given track.
+     */
+    public TrackFrames getFrames(int trackNr) {
+        return frames[trackNr];
+    }
+
+    /**
+     * Returns the position of the {@code curve}'th lane of the given
+     * track, interpolated from its frames.
+     */
+    public Vector getLanePoint(int trackNr, double t, double curve) {
+        return frames[trackNr].getPoint(t, curve);
+    }
+
+    /**
+     * Returns the unit tangent of the given track, interpolated from
+     * its frames.
+     */
+    public Vector getLaneTangent(int trackNr, double t) {
+        return frames[trackNr].getTangent(t);
+    }
+
+    /**
+     * Returns the curvature of the given track at {@code t}, interpolated
+     * from its table. Positive when the track curves towards its
+     * lanes, so the outer lanes are on the inside of the curve.
+     */
+    public double getCurvature(int trackNr, double t) {
+        double[] table = curvatures[trackNr];
+        double sample = (t - Math.floor(t)) * CURVATURE_SAMPLES;
+        int i = Math.min((int) sample, CURVATURE_SAMPLES - 1);
+        return table[i] + (sample - i) * (table[i + 1] - table[i]);
+    }
+
+    /**
+     * Computes the curvature of the given track at {@code t} from the
+     * first and second derivatives of the curve.
+     */
+    public double getCurvatureOnCurve(int trackNr, double t) {
+        Vector tangent;
+        Vector acceleration;
+        // The lanes lie to the right of the test track, and to the left
+        // of the others
+        double side;
+        if (0 == trackNr) {
+            tangent = getTestTangent(t);
+            acceleration = new Vector(-10 * Math.cos(2 * Math.PI * t),
+                                      -14 * Math.sin(2 * Math.PI * t),
+                                      0);
+            side = 1;
+        } else {
+            Vector[] currentControlPoints = getControlPoints(trackNr);
+            if (t >= 1) {
+                t -= 1;
+            }
+            int numberOfSegments = (currentControlPoints.length-1)/3;
+            int segment = (int) Math.floor(t*numberOfSegments);
+            Vector P0 = currentControlPoints[segment*3];
+            Vector P1 = currentControlPoints[segment*3+1];
+            Vector P2 = currentControlPoints[segment*3+2];
+            Vector P3 = currentControlPoints[segment*3+3];
+            double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
+            tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3);
+            acceleration = getCubicBezierAcc(bezierT, P0, P1, P2, P3);
+            side = -1;
+        }
+        double speed = Math.sqrt(tangent.x() * tangent.x() + tangent.y() * tangent.y());
+        if (speed < 1e-6) {
+            return 0;
+        }
+        return side * (tangent.y() * acceleration.x() - tangent.x() * acceleration.y())
+                / (speed * speed * speed);
+    }
+
+    /**
+     * Returns the control points of the given track, or {@code null}
+     * for the test track and for track numbers that do not exist.
+     */
+    public Vector[] getControlPoints(int trackNr) {
+        if (1 == trackNr) {
+            return controlPointsOTrack;
+        } else if (2 == trackNr) {
+            return controlPointsLTrack;
+        } else if (3 == trackNr) {
+            return controlPointsCTrack;
+        } else if (4 == trackNr) {
+            return controlPointsCustomTrack;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the spatial index over the given track, building it if
+     * it does not exist yet. Synchronized, since both the simulation
+     * and the rendering may request an index first.
+     */
+    public synchronized TrackIndex getTrackIndex(int trackNr) {
+        if (null == trackIndices[trackNr]) {
+            trackIndices[trackNr] = new TrackIndex(this, trackNr, INDEX_SEGMENTS);
+        }
+        return trackIndices[trackNr];
+    }
+
+    /**
+     * Returns the position of the given track.<br>
+     * This does not depend on the track that is drawn, so it is safe
+     * to use from the simulation.
+     */
+    public Vector getPointOnCurve(int trackNr, double t, double curve) {
+        if (0 == trackNr) {
+            return getPointOnTestCurve(t, curve);
+        } else if (1 == trackNr) {
+            return getPointOnOCurve(t, curve);
+        } else if (2 == trackNr) {
+            return getPointOnLCurve(t, curve);
+        } else if (3 == trackNr) {
+            return getPointOnCCurve(t, curve);
+        } else if (4 == trackNr) {
+            return getPointOnCustomCurve(t, curve);
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the tangent of the given track.<br>
+     * This does not depend on the track that is drawn, so it is safe
+     * to use from the simulation.
+     */
+    public Vector getTangentOnCurve(int trackNr, double t) {
+        Vector[] currentControlPoints = null;
+        if (0 == trackNr) {
+            return getTestTangent(t);
+        } else if (1 == trackNr) {
+            currentControlPoints = controlPointsOTrack;
+        } else if (2 == trackNr) {
+            currentControlPoints = controlPointsLTrack;
+        } else if (3 == trackNr) {
+             currentControlPoints = controlPointsCTrack;
+        } else if (4 == trackNr) {
+             currentControlPoints = controlPointsCustomTrack;
+        }
+        if (t >= 1) {
+                t -= 1;
+            }
+        int numberOfSegments = (currentControlPoints.length-1)/3;
+        int segment = (int) Math.floor(t*numberOfSegments);
+        // get Bezier points
+        Vector P0 = currentControlPoints[segment*3];
+        Vector P1 = currentControlPoints[segment*3+1];
+        Vector P2 = currentControlPoints[segment*3+2];
+        Vector P3 = currentControlPoints[segment*3+3];
+        double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
+        // get tangent
+        Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3);
+        return tangent;
+    }
+    
+     /**
+     * Returns the position of the {@code curve}'th outermost O curve at 0 <= {@code t} <= 1.<br>
+     * 0 = the innermost curve
+     * 5 = the outermost curve
+     * The curve parameter is a double to support getting the middle position of a track.
+     */
+    public Vector getPointOnOCurve(double t, double curve) {
+        if (t >= 1) {
+            t -= 1;
+        }
+        int numberOfSegments = (controlPointsOTrack.length-1)/3;
+        int segment = (int) Math.floor(t*numberOfSegments);
+        
+        Vector P0 = controlPointsOTrack[segment*3];
+        Vector P1 = controlPointsOTrack[segment*3+1];
+        Vector P2 = controlPointsOTrack[segment*3+2];
+        Vector P3 = controlPointsOTrack[segment*3+3];
+        double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
+        Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
+        if (curve == 0) {
+            return point;
+        }
+        Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
+        Vector normal = tangent.cross(Vector.Z).normalized();
+        return point.add(normal.scale(curve));
+    }
+    
+    /**
+     * Returns the position of the {@code curve}'th outermost L curve at 0 <= {@code t} <= 1.<br>
+     * 0 = the innermost curve
+     * 5 = the outermost curve
+     * The curve parameter is a double to support getting the middle position of a track.
+     */
+    public Vector getPointOnLCurve(double t, double curve) {
+        if (t >= 1) {
+            t -= 1;
+        }
+        int numberOfSegments = (controlPointsLTrack.length-1)/3;
+        int segment = (int) Math.floor(t*numberOfSegments);
+        
+        Vector P0 = controlPointsLTrack[segment*3];
+        Vector P1 = controlPointsLTrack[segment*3+1];
+        Vector P2 = controlPointsLTrack[segment*3+2];
+        Vector P3 = controlPointsLTrack[segment*3+3];
+        double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
+        Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
+        if (curve == 0) {
+            return point;
+        }
+        Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
+        Vector normal = tangent.cross(Vector.Z).normalized();
+        return point.add(normal.scale(curve));
+    }
+    
+    /**
+     * Returns the position of the {@code curve}'th outermost C curve at 0 <= {@code t} <= 1.<br>
+     * 0 = the innermost curve
+     * 5 = the outermost curve
+     * The curve parameter is a double to support getting the middle position of a track.
+     */
+    public Vector getPointOnCCurve(double t, double curve) {
+        if (t >= 1) {
+            t -= 1;
+        }
+        int numberOfSegments = (controlPointsCTrack.length-1)/3;
+        int segment = (int) Math.floor(t*numberOfSegments);
+        
+        Vector P0 = controlPointsCTrack[segment*3];
+        Vector P1 = controlPointsCTrack[segment*3+1];
+        Vector P2 = controlPointsCTrack[segment*3+2];
+        Vector P3 = controlPointsCTrack[segment*3+3];
+        double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
+        Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
+        if (curve == 0) {
+            return point;
+        }
+        Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
+        Vector normal = tangent.cross(Vector.Z).normalized();
+        return point.add(normal.scale(curve));
+    }
+    
+    /**
+     * Returns the position of the {@code curve}'th outermost custom curve at 0 <= {@code t} <= 1.<br>
+     * 0 = the innermost curve
+     * 5 = the outermost curve
+     * The curve parameter is a double to support getting the middle position of a track.
+     */
+    public Vector getPointOnCustomCurve(double t, double curve) {
+        if (t >= 1) {
+            t -= 1;
+        }
+        int numberOfSegments = (controlPointsCustomTrack.length-1)/3;
+        int segment = (int) Math.floor(t*numberOfSegments);
+        
+        Vector P0 = controlPointsCustomTrack[segment*3];
+        Vector P1 = controlPointsCustomTrack[segment*3+1];
+        Vector P2 = controlPointsCustomTrack[segment*3+2];
+        Vector P3 = controlPointsCustomTrack[segment*3+3];
+        double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
+        Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
+        if (curve == 0) {
+            return point;
+        }
+        Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
+        Vector normal = tangent.cross(Vector.Z).normalized();
+        return point.add(normal.scale(curve));
+    }
+    
+    /**
+     * Returns the position of the {@code curve}'th outermost test curve at 0 <= {@code t} <= 1.<br>
+     * 0 = the innermost curve
+     * 5 = the outermost curve
+     * The curve parameter is a double to support getting the middle position of a track.
+     */
+    public Vector getPointOnTestCurve(double t, double curve) {
+        Vector point = getTestPoint(t);
+        if (curve == 0) {
+            return point;
+        }
+        Vector tangent = getTestTangent(t);
+        Vector normal = tangent.cross(Vector.Z).normalized();
+        return point.add(normal.scale(curve));
+    }
+    
+    /**
+     * Returns the position of the test curve at 0 <= {@code t} <= 1.
+     */
+    public Vector getTestPoint(double t) {
+        // / 10 * cos(2*pi*t) \
+        // | 14 * sin(2*pi*t) |
+        // \ 1                /
+
+        return new Vector(10 * Math.cos(2 * Math.PI * t),
+                          14 * Math.sin(2 * Math.PI * t),
+                          1);
+    }
+
+    /**
+     * Returns the tangent of the test curve at 0 <= {@code t} <= 1.
+     */
+    public Vector getTestTangent(double t) {
+        // / 10 * cos(2*pi*t) \
+        // | 14 * sin(2*pi*t) |
+        // \ 1                /
+
+        return new Vector(-10 * Math.sin(2 * Math.PI * t),
+                          14 * Math.cos(2 * Math.PI * t),
+                          0);
+    }
+    
+    /**
+     * Returns a point on a cubic Bezier segment
+     */
+    public Vector getCubicBezierPnt(double t, Vector P0, Vector P1, Vector P2, Vector P3) {
+        /*Vector CasteljauA01 = P0.add(P1.subtract(P0).scale(t));
+        Vector CasteljauA12 = P1.add(P2.subtract(P1).scale(t));
+        Vector CasteljauA23 = P2.add(P3.subtract(P2).scale(t));
+        Vector CasteljauB01 = CasteljauA01.add(CasteljauA12.subtract(CasteljauA01).scale(t));
+        Vector CasteljauB12 = CasteljauA12.add(CasteljauA23.subtract(CasteljauA12).scale(t));
+        Vector CasteljauC01 = CasteljauB01.add(CasteljauB12.subtract(CasteljauB01).scale(t));
+        return CasteljauC01;*/
+        return P0.scale((1-t)*(1-t)*(1-t)).add(P1.scale(3*t*(1-t)*(1-t))).add(P2.scale(3*t*t*(1-t))).add(P3.scale(t*t*t));
+    }
+    
+    /**
+     * Returns the approximate tangent vector on a cubic Bezier segment
+     */
+    public Vector getCubicBezierTng(double t, Vector P0, Vector P1, Vector P2, Vector P3) {
+        // commented out: correct equations but prone to errors
+            // standardBezier: return P0.scale((1-t)*(1-t)*(1-t)).add(P1.scale(3*t*(1-t)*(1-t))).add(P2.scale(3*t*t*(1-t))).add(P3.scale(t*t*t));
+            return P1.subtract(P0).scale(3*(1-t)*(1-t)).add(P2.subtract(P1).scale(6*(1-t)*t)).add(P3.subtract(P2).scale(3*t*t));
+        //return getCubicBezierPnt(t+0.001, P0, P1, P2, P3).subtract(getCubicBezierPnt(t, P0, P1, P2, P3));
+    }
+
+    /**
+     * Returns the second derivative on a cubic Bezier segment
+     */
+    public Vector getCubicBezierAcc(double t, Vector P0, Vector P1, Vector P2, Vector P3) {
+        return P2.subtract(P1.scale(2)).add(P0).scale(6*(1-t)).add(P3.subtract(P2.scale(2)).add(P1).scale(6*t));
+    }
+}
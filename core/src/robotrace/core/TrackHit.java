@@ -0,0 +1,42 @@
+package robotrace.core;
+
+/**
+ * Result of a nearest track point query, or of a ray hitting the track.
+ *
+ * Hits are mutable so that repeated queries can reuse them instead of
+ * allocating a new object per query.
+ */
+public class TrackHit {
+
+    /** Closest point on the center line of the track. */
+    public double x, y, z;
+
+    /** Track parameter of the closest point, in the range [0,1). */
+    public double t;
+
+    /**
+     * Signed lateral offset of the query point, in the same units as
+     * the {@code curve} argument of {@code TrackGeometry.getLanePoint}:
+     * 0 is the innermost curve and 4 the outermost curve, the edges of
+     * the track.
+     */
+    public double lateral;
+
+    /**
+     * Lane of the query point, or -1 if off track. The curves 0 to 4
+     * bound the four lanes 0 to 3: lane k lies between curve k and
+     * curve k + 1, and its middle, where a robot in that lane runs, is
+     * at curve k + 0.5, as returned by {@code RobotMotion.getLane}.
+     */
+    public int lane;
+
+    /** Distance from the query point to the center line. */
+    public double distance;
+
+    /**
+     * Returns whether the query point lies on the track.
+     */
+    public boolean isOnTrack() {
+        return lane >= 0;
+    }
+}
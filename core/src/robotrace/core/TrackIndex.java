@@ -0,0 +1,554 @@
+package robotrace.core;
+
+/**
+ * Bounding volume hierarchy over the tessellated center line of a
+ * race track.
+ *
+ * The center line (curve 2) is sampled into line segments together
+ * with the lateral normal at each sample. Since consecutive segments
+ * are spatially coherent, the hierarchy is built by splitting the
+ * segment range in half, which gives tight boxes without sorting.
+ * A query descends the nearest child first and prunes every box that
+ * is further away than the best segment found so far.
+ */
+public class TrackIndex {
+
+    /** Maximum number of segments in a leaf. */
+    private final static int LEAF_SIZE = 4;
+
+    /** Curve along which the track is indexed, the middle of the track. */
+    private final static double CENTER_CURVE = 2;
+
+    /** Distance of the outermost lanes from the center line. */
+    private final static double LANE_OFFSET = CENTER_CURVE - 0.5;
+
+    /** Largest ratio of the arc length of the center line to that of a lane. */
+    private final static double MAX_ARC_SCALE = 10;
+
+    /** Number of segments along the track. */
+    private final int segments;
+
+    /** Frames along the track, from which the samples are taken. */
+    private final TrackFrames frames;
+
+    /** Sample points of the center line, x, y and z interleaved. */
+    private final double[] points;
+
+    /** Unit lateral normals at the samples, pointing outwards. */
+    private final double[] normals;
+
+    /** Bounding boxes of the nodes: min x, y, z and max x, y, z. */
+    private final double[] bounds;
+
+    /** First segment of each node. */
+    private final int[] first;
+
+    /** Number of segments of each node. */
+    private final int[] count;
+
+    /** Index of the left child of each node, or -1 for a leaf. */
+    private final int[] left;
+
+    /** Index of the right child of each node. */
+    private final int[] right;
+
+    /** Number of nodes in use. */
+    private int nodes = 0;
+
+    /** Length of the center line up to each sample. */
+    private final double[] cumulative;
+
+    /**
+     * Ratio of the length of each segment of the center line to that of
+     * the shortest lane alongside it.
+     */
+    private final double[] arcScales;
+
+    /** Largest of the arc scales. */
+    private double arcScale = 1;
+
+    /** Traversal stack, reused between queries. */
+    private final int[] stack = new int[64];
+
+    /** Frame buffer for taking samples. */
+    private final double[] frame = new double[6];
+
+    /** Corners of the segment that a ray is tested against, reused. */
+    private final double[] corners = new double[12];
+
+    /** Weights of the last triangle hit by a ray, reused. */
+    private final double[] barycentric = new double[2];
+
+    /**
+     * Builds the index over track {@code trackNr} of {@code track},
+     * using {@code segments} line segments.
+     */
+    public TrackIndex(TrackGeometry track, int trackNr, int segments) {
+        this.segments = segments;
+        points = new double[3 * (segments + 1)];
+        normals = new double[3 * (segments + 1)];
+        cumulative = new double[segments + 1];
+        arcScales = new double[segments];
+        frames = track.getFrames(trackNr);
+        for (int i = 0; i <= segments; i++) {
+            setSample(i);
+        }
+        accumulate(0);
+
+        // Halving never creates leaves of a single segment (unless the
+        // track has only one), so there are at most segments nodes
+        int maxNodes = Math.max(1, segments);
+        bounds = new double[6 * maxNodes];
+        first = new int[maxNodes];
+        count = new int[maxNodes];
+        left = new int[maxNodes];
+        right = new int[maxNodes];
+        build(0, segments);
+    }
+
+    /**
+     * Takes sample {@code i} from the frames along the track.
+     */
+    private void setSample(int i) {
+        // The last sample closes the ring
+        double t = (i == segments) ? 0 : i / ((double) segments);
+        frames.getFrame(t, frame, 0);
+        for (int axis = 0; axis < 3; axis++) {
+            points[3 * i + axis] = frame[axis] + frame[3 + axis] * CENTER_CURVE;
+            normals[3 * i + axis] = frame[3 + axis];
+        }
+    }
+
+    /**
+     * Takes the samples where {@code tFrom <= t <= tTo} from the frames
+     * again, after the track changed there. The lengths are summed again
+     * from the first segment that changed, and only the boxes that
+     * contain the changed samples are refitted.
+     */
+    public void update(double tFrom, double tTo) {
+        int from = (int) Math.floor(tFrom * segments);
+        int to = (int) Math.min(Math.ceil(tTo * segments), segments);
+        updateSamples(from, to);
+        // The first and the last sample are the same point
+        if (0 == from && segments != to) {
+            updateSamples(segments, segments);
+        } else if (segments == to && 0 != from) {
+            updateSamples(0, 0);
+        }
+    }
+
+    /**
+     * Takes the samples [from, to] from the frames again.
+     */
+    private void updateSamples(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            setSample(i);
+        }
+        // Segment from - 1 ends at a changed sample
+        accumulate(Math.max(from - 1, 0));
+        refit(0, from, to);
+    }
+
+    /**
+     * Sums the lengths of the segments from segment {@code from} on, and
+     * measures them against the outermost lanes.
+     */
+    private void accumulate(int from) {
+        for (int i = from; i < segments; i++) {
+            double length = Math.sqrt(segmentLengthSqr(i));
+            cumulative[i + 1] = cumulative[i] + length;
+            double lane = Math.min(laneLength(i, -LANE_OFFSET), laneLength(i, LANE_OFFSET));
+            arcScales[i] = lane * MAX_ARC_SCALE > length ? length / lane : MAX_ARC_SCALE;
+        }
+        arcScale = 1;
+        for (int i = 0; i < segments; i++) {
+            arcScale = Math.max(arcScale, arcScales[i]);
+        }
+    }
+
+    /**
+     * Returns the length of segment {@code i} of the lane at
+     * {@code offset} from the center line.
+     */
+    private double laneLength(int i, double offset) {
+        int p = 3 * i;
+        double dx = points[p + 3] + offset * normals[p + 3] - points[p] - offset * normals[p];
+        double dy = points[p + 4] + offset * normals[p + 4] - points[p + 1] - offset * normals[p + 1];
+        double dz = points[p + 5] + offset * normals[p + 5] - points[p + 2] - offset * normals[p + 2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Refits the boxes in the subtree of {@code node} that contain any
+     * of the samples [from, to].
+     */
+    private void refit(int node, int from, int to) {
+        if (first[node] > to || first[node] + count[node] < from) {
+            return;
+        }
+        if (left[node] < 0) {
+            refit(node);
+            return;
+        }
+        int l = left[node];
+        int r = right[node];
+        refit(l, from, to);
+        refit(r, from, to);
+        int b = 6 * node;
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[b + axis] = Math.min(bounds[6 * l + axis], bounds[6 * r + axis]);
+            bounds[b + 3 + axis] = Math.max(bounds[6 * l + 3 + axis], bounds[6 * r + 3 + axis]);
+        }
+    }
+
+    /**
+     * Returns the length of the center line of the track.
+     */
+    public double getLength() {
+        return cumulative[segments];
+    }
+
+    /**
+     * Returns the largest ratio of the arc length of the center line to
+     * that of a lane alongside it, over the whole track; the center line
+     * is longer than the lanes on the inside of a curve.
+     */
+    public double getArcScale() {
+        return arcScale;
+    }
+
+    /**
+     * Returns the length of the center line from the start up to
+     * parameter {@code t}, in the range [0,1), of the track.
+     *
+     * The parameter of the Bezier curves does not run in proportion to
+     * the distance along them, so distances along the track must be
+     * compared by their arc length.
+     */
+    public double getArcLength(double t) {
+        double s = (t - Math.floor(t)) * segments;
+        int i = Math.min((int) s, segments - 1);
+        return cumulative[i] + (s - i) * (cumulative[i + 1] - cumulative[i]);
+    }
+
+    /**
+     * Returns the number of segments along the track.
+     */
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Builds the subtree over the segments [from, from + n) and
+     * returns its node index.
+     */
+    private int build(int from, int n) {
+        int node = nodes++;
+        first[node] = from;
+        count[node] = n;
+        if (n <= LEAF_SIZE) {
+            left[node] = -1;
+        } else {
+            left[node] = build(from, n / 2);
+            right[node] = build(from + n / 2, n - n / 2);
+        }
+        refit(node);
+        return node;
+    }
+
+    /**
+     * Recomputes the bounding box of {@code node} from the sample
+     * points it covers.
+     */
+    private void refit(int node) {
+        int b = 6 * node;
+        bounds[b] = bounds[b + 1] = bounds[b + 2] = Double.POSITIVE_INFINITY;
+        bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = Double.NEGATIVE_INFINITY;
+        for (int i = first[node]; i <= first[node] + count[node]; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double value = points[3 * i + axis];
+                bounds[b + axis] = Math.min(bounds[b + axis], value);
+                bounds[b + 3 + axis] = Math.max(bounds[b + 3 + axis], value);
+            }
+        }
+    }
+
+    /**
+     * Returns the squared length of segment {@code i}.
+     */
+    private double segmentLengthSqr(int i) {
+        double dx = points[3 * i + 3] - points[3 * i];
+        double dy = points[3 * i + 4] - points[3 * i + 1];
+        double dz = points[3 * i + 5] - points[3 * i + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Returns the squared distance from (x, y, z) to the box of
+     * {@code node}.
+     */
+    private double boxDistanceSqr(int node, double x, double y, double z) {
+        int b = 6 * node;
+        double dx = Math.max(0, Math.max(bounds[b] - x, x - bounds[b + 3]));
+        double dy = Math.max(0, Math.max(bounds[b + 1] - y, y - bounds[b + 4]));
+        double dz = Math.max(0, Math.max(bounds[b + 2] - z, z - bounds[b + 5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Finds the point on the track nearest to (x, y, z) and stores it
+     * in {@code hit}.
+     *
+     * @return The given hit, for convenience.
+     */
+    public TrackHit nearest(double x, double y, double z, TrackHit hit) {
+        double best = Double.POSITIVE_INFINITY;
+        int bestSegment = 0;
+        double bestU = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (boxDistanceSqr(node, x, y, z) >= best) {
+                continue;
+            }
+            if (left[node] < 0) {
+                // Leaf: test its segments exactly
+                for (int i = first[node]; i < first[node] + count[node]; i++) {
+                    int p = 3 * i;
+                    double ex = points[p + 3] - points[p];
+                    double ey = points[p + 4] - points[p + 1];
+                    double ez = points[p + 5] - points[p + 2];
+                    double lengthSqr = ex * ex + ey * ey + ez * ez;
+                    double u = 0;
+                    if (lengthSqr > 0) {
+                        u = ((x - points[p]) * ex + (y - points[p + 1]) * ey
+                                + (z - points[p + 2]) * ez) / lengthSqr;
+                        u = Math.max(0, Math.min(1, u));
+                    }
+                    double dx = points[p] + u * ex - x;
+                    double dy = points[p + 1] + u * ey - y;
+                    double dz = points[p + 2] + u * ez - z;
+                    double distanceSqr = dx * dx + dy * dy + dz * dz;
+                    if (distanceSqr < best) {
+                        best = distanceSqr;
+                        bestSegment = i;
+                        bestU = u;
+                    }
+                }
+            } else {
+                // Push the farthest child first, so the nearest is visited first
+                int l = left[node];
+                int r = right[node];
+                if (boxDistanceSqr(l, x, y, z) < boxDistanceSqr(r, x, y, z)) {
+                    stack[top++] = r;
+                    stack[top++] = l;
+                } else {
+                    stack[top++] = l;
+                    stack[top++] = r;
+                }
+            }
+        }
+
+        int p = 3 * bestSegment;
+        hit.x = points[p] + bestU * (points[p + 3] - points[p]);
+        hit.y = points[p + 1] + bestU * (points[p + 4] - points[p + 1]);
+        hit.z = points[p + 2] + bestU * (points[p + 5] - points[p + 2]);
+        hit.t = (bestSegment + bestU) / segments;
+        if (hit.t >= 1) {
+            hit.t -= 1;
+        }
+        hit.distance = Math.sqrt(best);
+
+        // Interpolate the lateral normal and project the query point on it
+        double nx = normals[p] + bestU * (normals[p + 3] - normals[p]);
+        double ny = normals[p + 1] + bestU * (normals[p + 4] - normals[p + 1]);
+        double nz = normals[p + 2] + bestU * (normals[p + 5] - normals[p + 2]);
+        double nLength = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        hit.lateral = CENTER_CURVE + ((x - hit.x) * nx + (y - hit.y) * ny
+                + (z - hit.z) * nz) / nLength;
+        hit.lane = (hit.lateral >= 0 && hit.lateral < 4) ? (int) hit.lateral : -1;
+        return hit;
+    }
+
+    /**
+     * Intersects the ray from (ox, oy, oz) in direction (dx, dy, dz)
+     * with the surface of the track, between its innermost and outermost
+     * curve, and stores the point on the track that it hits in
+     * {@code hit}. The hit is left alone if the ray misses.
+     *
+     * The boxes, which hold the center line, are widened by half the
+     * width of the track; every segment is tested as two triangles
+     * spanning the track.
+     *
+     * @return The ray parameter of the hit, or infinity if the ray
+     *         misses.
+     */
+    public double intersect(double ox, double oy, double oz,
+                            double dx, double dy, double dz, TrackHit hit) {
+        double best = Double.POSITIVE_INFINITY;
+        int bestSegment = -1;
+        double bestU = 0;
+        double bestCurve = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (rayBoxDistance(node, ox, oy, oz, dx, dy, dz) >= best) {
+                continue;
+            }
+            if (left[node] < 0) {
+                // Leaf: test its segments exactly
+                for (int i = first[node]; i < first[node] + count[node]; i++) {
+                    int p = 3 * i;
+                    // Corners on the innermost and outermost curve
+                    for (int axis = 0; axis < 3; axis++) {
+                        corners[axis] = points[p + axis] - CENTER_CURVE * normals[p + axis];
+                        corners[3 + axis] = points[p + axis] + CENTER_CURVE * normals[p + axis];
+                        corners[6 + axis] = points[p + 3 + axis] + CENTER_CURVE * normals[p + 3 + axis];
+                        corners[9 + axis] = points[p + 3 + axis] - CENTER_CURVE * normals[p + 3 + axis];
+                    }
+                    // Inner start, outer start and outer end
+                    double t = intersectTriangle(0, 3, 6, ox, oy, oz, dx, dy, dz);
+                    if (t < best) {
+                        best = t;
+                        bestSegment = i;
+                        bestU = barycentric[1];
+                        bestCurve = 2 * CENTER_CURVE * (barycentric[0] + barycentric[1]);
+                    }
+                    // Inner start, outer end and inner end
+                    t = intersectTriangle(0, 6, 9, ox, oy, oz, dx, dy, dz);
+                    if (t < best) {
+                        best = t;
+                        bestSegment = i;
+                        bestU = barycentric[0] + barycentric[1];
+                        bestCurve = 2 * CENTER_CURVE * barycentric[0];
+                    }
+                }
+            } else {
+                // Push the farthest child first, so the nearest is visited first
+                int l = left[node];
+                int r = right[node];
+                if (rayBoxDistance(l, ox, oy, oz, dx, dy, dz)
+                        < rayBoxDistance(r, ox, oy, oz, dx, dy, dz)) {
+                    stack[top++] = r;
+                    stack[top++] = l;
+                } else {
+                    stack[top++] = l;
+                    stack[top++] = r;
+                }
+            }
+        }
+        if (bestSegment < 0) {
+            return best;
+        }
+
+        int p = 3 * bestSegment;
+        hit.x = points[p] + bestU * (points[p + 3] - points[p]);
+        hit.y = points[p + 1] + bestU * (points[p + 4] - points[p + 1]);
+        hit.z = points[p + 2] + bestU * (points[p + 5] - points[p + 2]);
+        hit.t = (bestSegment + bestU) / segments;
+        if (hit.t >= 1) {
+            hit.t -= 1;
+        }
+        hit.lateral = bestCurve;
+        hit.lane = Math.min((int) bestCurve, 3);
+        double hx = ox + best * dx - hit.x;
+        double hy = oy + best * dy - hit.y;
+        double hz = oz + best * dz - hit.z;
+        hit.distance = Math.sqrt(hx * hx + hy * hy + hz * hz);
+        return best;
+    }
+
+    /**
+     * Returns the ray parameter at which the ray enters the box of
+     * {@code node}, widened by half the width of the track, or infinity
+     * if it misses the box.
+     */
+    private double rayBoxDistance(int node, double ox, double oy, double oz,
+                                  double dx, double dy, double dz) {
+        int b = 6 * node;
+        double near = 0;
+        double far = Double.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            double o = 0 == axis ? ox : 1 == axis ? oy : oz;
+            double d = 0 == axis ? dx : 1 == axis ? dy : dz;
+            double min = bounds[b + axis] - CENTER_CURVE;
+            double max = bounds[b + 3 + axis] + CENTER_CURVE;
+            if (0 == d) {
+                if (o < min || o > max) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                continue;
+            }
+            double t0 = (min - o) / d;
+            double t1 = (max - o) / d;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        }
+        return near <= far ? near : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Intersects the ray with the triangle of the corners at {@code a},
+     * {@code b} and {@code c} in {@code corners}, and stores the weights
+     * of {@code b} and {@code c} at the hit in {@code barycentric}.
+     *
+     * @return The ray parameter of the hit, or infinity if the ray
+     *         misses.
+     */
+    private double intersectTriangle(int a, int b, int c, double ox, double oy, double oz,
+                                     double dx, double dy, double dz) {
+        double e1x = corners[b] - corners[a];
+        double e1y = corners[b + 1] - corners[a + 1];
+        double e1z = corners[b + 2] - corners[a + 2];
+        double e2x = corners[c] - corners[a];
+        double e2y = corners[c + 1] - corners[a + 1];
+        double e2z = corners[c + 2] - corners[a + 2];
+        // p = d x e2
+        double px = dy * e2z - dz * e2y;
+        double py = dz * e2x - dx * e2z;
+        double pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double inverse = 1 / det;
+        double sx = ox - corners[a];
+        double sy = oy - corners[a + 1];
+        double sz = oz - corners[a + 2];
+        double u = (sx * px + sy * py + sz * pz) * inverse;
+        if (u < 0 || u > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // q = s x e1
+        double qx = sy * e1z - sz * e1y;
+        double qy = sz * e1x - sx * e1z;
+        double qz = sx * e1y - sy * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (v < 0 || u + v > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = (e2x * qx + e2y * qy + e2z * qz) * inverse;
+        if (t < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        barycentric[0] = u;
+        barycentric[1] = v;
+        return t;
+    }
+
+    /**
+     * Finds the nearest track points for {@code n} query points, given
+     * as x, y and z interleaved in {@code coordinates}, and stores them
+     * in the first {@code n} elements of {@code hits}.
+     */
+    public void nearest(double[] coordinates, int n, TrackHit[] hits) {
+        for (int i = 0; i < n; i++) {
+            nearest(coordinates[3 * i], coordinates[3 * i + 1],
+                    coordinates[3 * i + 2], hits[i]);
+        }
+    }
+}
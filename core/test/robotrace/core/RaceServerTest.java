@@ -0,0 +1,224 @@
+package robotrace.core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the race broadcast over loopback: subscribers that keep up
+ * decode every tick as simulated, and a subscriber that does not read
+ * overflows its bounded buffer without holding up the others.
+ */
+public class RaceServerTest {
+
+    /** Track on which the robots race. */
+    private final static int TRACK = 1;
+
+    /** Number of subscribers that keep up. */
+    private final static int CLIENTS = 3;
+
+    /** Number of ticks that every subscriber has to receive. */
+    private final static int TICKS = 400;
+
+    /** Simulated seconds per second, so the ticks come in quickly. */
+    private final static double TIME_SCALE = 100;
+
+    /** Longest time to wait for the server, in milliseconds. */
+    private final static long TIMEOUT = 30000;
+
+    /** The server under test. */
+    private RaceServer server;
+
+    /** State of every tick that the server broadcast, by tick. */
+    private final Map<Long, double[]> broadcast = new ConcurrentHashMap<Long, double[]>();
+
+    /** The last tick that the server broadcast, or -1. */
+    private volatile long latestTick = -1;
+
+    /**
+     * Checks the states that a subscriber receives against those that
+     * the server broadcast.
+     */
+    private class Recorder implements RaceStreamListener {
+
+        /** Number of ticks received. */
+        private volatile long received = 0;
+
+        /** Number of ticks whose state differs from the broadcast one. */
+        private volatile long mismatches = 0;
+
+        /** The last tick received, or -1. */
+        private volatile long lastTick = -1;
+
+        /** Whether the ticks came in increasing order. */
+        private volatile boolean ordered = true;
+
+        @Override
+        public void receive(long tick, int trackNr, double[] totalDistance) {
+            double[] expected = broadcast.get(tick);
+            if (null == expected || TRACK != trackNr || !Arrays.equals(expected, totalDistance)) {
+                mismatches++;
+            }
+            if (tick <= lastTick) {
+                ordered = false;
+            }
+            lastTick = tick;
+            received++;
+        }
+    }
+
+    /**
+     * Starts a server on an ephemeral port, and waits until it listens.
+     */
+    @Before
+    public void startServer() throws InterruptedException {
+        server = new RaceServer(0, TRACK);
+        server.setTimeScale(TIME_SCALE);
+        server.addListener(new RaceStreamListener() {
+            @Override
+            public void receive(long tick, int trackNr, double[] totalDistance) {
+                broadcast.put(tick, totalDistance.clone());
+                latestTick = tick;
+            }
+        });
+        Thread thread = new Thread(server, "RaceServer");
+        thread.setDaemon(true);
+        thread.start();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (server.getLocalPort() < 0) {
+            assertTrue("The server does not listen", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Returns the loopback address of the server.
+     */
+    private InetSocketAddress getAddress() {
+        return new InetSocketAddress("localhost", server.getLocalPort());
+    }
+
+    /**
+     * Waits until every recorder received {@code ticks} ticks.
+     */
+    private void awaitTicks(Recorder[] recorders, long ticks) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (Recorder recorder : recorders) {
+            while (recorder.received < ticks) {
+                assertTrue("Received only " + recorder.received + " ticks",
+                           System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void subscribersDecodeTheSimulatedStates() throws InterruptedException {
+        Recorder[] recorders = new Recorder[CLIENTS];
+        RaceStreamClient[] clients = new RaceStreamClient[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            recorders[i] = new Recorder();
+            clients[i] = new RaceStreamClient(getAddress(), recorders[i]);
+            clients[i].start();
+        }
+
+        awaitTicks(recorders, TICKS);
+        assertEquals(CLIENTS, server.getClientCount());
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i].stop();
+            assertEquals(0, recorders[i].mismatches);
+            assertTrue(recorders[i].ordered);
+        }
+        assertEquals(0, server.getDroppedFrames());
+    }
+
+    @Test(timeout = 60000)
+    public void slowSubscriberOverflowsWithoutHoldingUpOthers()
+            throws IOException, InterruptedException {
+        // A subscriber that neither reads nor acknowledges, behind a small
+        // receive buffer, so that its output buffer on the server fills up
+        SocketChannel slow = SocketChannel.open();
+        slow.socket().setReceiveBufferSize(1024);
+        slow.connect(getAddress());
+
+        Recorder recorder = new Recorder();
+        RaceStreamClient client = new RaceStreamClient(getAddress(), recorder);
+        client.start();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (0 == server.getDroppedFrames()) {
+            assertTrue("The slow subscriber never overflowed",
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        awaitTicks(new Recorder[] {recorder}, recorder.received + TICKS);
+        client.stop();
+        assertEquals(0, recorder.mismatches);
+        assertTrue(recorder.ordered);
+
+        // Once it reads again, the slow subscriber decodes the frames that
+        // fit, with gaps where they were skipped, until it caught up
+        long caughtUp = latestTick + TICKS;
+        RaceStream.History history = new RaceStream.History(RaceServer.ROBOTS);
+        ByteBuffer in = ByteBuffer.allocate(RaceServer.CLIENT_BUFFER);
+        ByteBuffer ack = ByteBuffer.allocate(RaceStream.ACK_SIZE);
+        double[] totalDistance = new double[RaceServer.ROBOTS];
+        long lastTick = -1;
+        boolean skipped = false;
+        while (lastTick < caughtUp) {
+            if (slow.read(in) < 0) {
+                fail("The server closed the slow subscriber");
+            }
+            in.flip();
+            while (in.remaining() >= 2 && in.remaining() >= 2 + (in.getShort(in.position()) & 0xFFFF)) {
+                int length = in.getShort() & 0xFFFF;
+                ByteBuffer frame = in.duplicate();
+                frame.limit(in.position() + length);
+                in.position(in.position() + length);
+
+                long tick = RaceStream.decode(frame, history);
+                assertTrue("The frame has no known base", tick >= 0);
+                assertTrue(tick > lastTick);
+                skipped |= lastTick >= 0 && tick > lastTick + 1;
+                lastTick = tick;
+
+                long[] state = history.get(tick);
+                for (int i = 0; i < state.length; i++) {
+                    totalDistance[i] = RaceStream.dequantize(state[i]);
+                }
+                double[] expected = broadcast.get(tick);
+                assertNotNull(expected);
+                assertArrayEquals(expected, totalDistance, 0);
+
+                ack.clear();
+                ack.putLong(tick);
+                ack.flip();
+                while (ack.hasRemaining()) {
+                    slow.write(ack);
+                }
+            }
+            in.compact();
+        }
+        slow.close();
+        assertTrue("No frames were skipped", skipped);
+    }
+}
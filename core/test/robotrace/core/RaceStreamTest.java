@@ -0,0 +1,95 @@
+package robotrace.core;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the wire format of the race broadcast: key frames, frames
+ * relative to an acknowledged base, and the zigzag var longs of their
+ * differences.
+ */
+public class RaceStreamTest {
+
+    /**
+     * Encodes a frame into a buffer of its own, and returns it flipped.
+     */
+    private static ByteBuffer encode(long tick, int trackNr, long[] state,
+                                     long baseTick, long[] base) {
+        ByteBuffer frame = ByteBuffer.allocate(RaceStream.getMaxFrameSize(state.length));
+        RaceStream.encode(frame, tick, trackNr, state, baseTick, base);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Decodes {@code frame}, checking its length prefix, and returns the
+     * tick. A frame that is decoded has to be read to its end.
+     */
+    private static long decode(ByteBuffer frame, RaceStream.History history) {
+        int length = frame.getShort() & 0xFFFF;
+        assertEquals(frame.remaining(), length);
+        long tick = RaceStream.decode(frame, history);
+        if (tick >= 0) {
+            assertEquals(0, frame.remaining());
+        }
+        return tick;
+    }
+
+    @Test
+    public void keyFrameRoundTrips() {
+        long[] state = {0, 1, RaceStream.quantize(5.25), Long.MAX_VALUE / 2};
+        RaceStream.History history = new RaceStream.History(state.length);
+
+        assertEquals(1000, decode(encode(1000, 3, state, 0, null), history));
+        assertArrayEquals(state, history.get(1000));
+        assertEquals(3, history.getTrackNr(1000));
+    }
+
+    @Test
+    public void deltaFrameRoundTripsWithNegativeDifferences() {
+        long[] base = {100000, 200000, 300000, 400000};
+        long[] state = {100001, 199999, 300000, 400000 + 65536};
+        RaceStream.History history = new RaceStream.History(base.length);
+        decode(encode(7, 1, base, 0, null), history);
+
+        ByteBuffer key = encode(8, 1, state, 0, null);
+        ByteBuffer delta = encode(8, 1, state, 7, base);
+        assertEquals(8, decode(delta, history));
+        assertArrayEquals(state, history.get(8));
+
+        // small differences of either sign take a byte each
+        assertTrue(delta.limit() < key.limit());
+        assertEquals(2 + 1 + 1 + 1 + 1 + 1 + 1 + 1 + 3, delta.limit());
+    }
+
+    @Test
+    public void frameWithUnknownBaseIsRejected() {
+        long[] state = {1, 2, 3, 4};
+        RaceStream.History history = new RaceStream.History(state.length);
+
+        assertEquals(-1, decode(encode(200, 0, state, 199, state), history));
+        assertEquals(null, history.get(200));
+    }
+
+    @Test
+    public void historyForgetsTicksThatWereOverwritten() {
+        long[] state = {1, 2, 3, 4};
+        RaceStream.History history = new RaceStream.History(state.length);
+        decode(encode(5, 0, state, 0, null), history);
+        decode(encode(5 + RaceStream.HISTORY, 0, state, 0, null), history);
+
+        assertEquals(null, history.get(5));
+        assertArrayEquals(state, history.get(5 + RaceStream.HISTORY));
+    }
+
+    @Test
+    public void quantizedDistancesRoundTrip() {
+        double totalDistance = 3.0 + 12345 / RaceStream.QUANTA_PER_LAP;
+        assertEquals(totalDistance,
+                RaceStream.dequantize(RaceStream.quantize(totalDistance)), 0);
+    }
+}
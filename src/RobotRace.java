@@ -1,16 +1,80 @@
 import com.jogamp.opengl.util.texture.TextureIO;
 import com.jogamp.opengl.util.texture.Texture;
+import com.jogamp.opengl.util.gl2.GLUT;
+import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Frame;
+import java.awt.Window;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
+import javax.media.opengl.GLAnimatorControl;
+import javax.media.opengl.GLAutoDrawable;
+import javax.media.opengl.GLEventListener;
+import javax.media.opengl.TraceGL2;
+import javax.media.opengl.awt.GLCanvas;
+import javax.imageio.ImageIO;
+import javax.swing.JComboBox;
+import javax.swing.SwingUtilities;
 import static javax.media.opengl.GL2.*;
 import robotrace.Base;
 import robotrace.Vector;
+import robotrace.core.BatchRaceRunner;
+import robotrace.core.Race;
+import robotrace.core.RaceEventListener;
+import robotrace.core.RaceServer;
+import robotrace.core.RaceStream;
+import robotrace.core.RaceStreamClient;
+import robotrace.core.RaceStreamListener;
+import robotrace.core.RankingEngine;
+import robotrace.core.RobotGrid;
+import robotrace.core.RobotMotion;
+import robotrace.core.SimulationClock;
+import robotrace.core.TerrainHeight;
+import robotrace.core.TimerListener;
+import robotrace.core.TimerWheel;
+import robotrace.core.TrackFrames;
+import robotrace.core.TrackGeometry;
+import robotrace.core.TrackHit;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import static javax.media.opengl.GL.GL_REPEAT;
 import static javax.media.opengl.GL.GL_TEXTURE_2D;
 import static javax.media.opengl.GL.GL_TEXTURE_WRAP_S;
@@ -84,19 +148,115 @@ public class RobotRace extends Base {
     /** Instance of the terrain. */
     private final Terrain terrain;
 
+    /** The race between the robots, without drawing. */
+    private final Race race;
+
+    /** Clock that drives the simulation and the animation. */
+    private final SimulationClock clock = new SimulationClock(TIME_SCALE);
+
+    /** Simulation of the race, on its own thread. */
+    private final RaceSimulation simulation;
+
+    /** Interpolates the simulation snapshots for each frame. */
+    private final SnapshotInterpolator interpolator;
+
+    /** Address of the race broadcast to watch, or null to run the race here. */
+    private final InetSocketAddress streamAddress;
+
+    /** Measurement of a run of the load test, or null outside of one. */
+    private final LoadRun loadRun;
+
+    /** The simulation snapshot used to render the current frame. */
+    private RaceSnapshot snapshot;
+
+    /** Display lists, buffers and textures on the GPU. */
+    private final GpuResources resources = new GpuResources();
+
+    /** Tessellated primitives, shared by all robots and the axis frame. */
+    private final PrimitiveCache primitives = new PrimitiveCache();
+
+    /** The walk cycle of the robots. */
+    private final PoseTable poseTable = new PoseTable();
+
+    /** Model view matrix of the robot that is drawn, column-major. */
+    private final float[] robotModelView = new float[16];
+
+    /** View frustum of the current frame. */
+    private final Frustum frustum = new Frustum();
+
     /**
-     * Speed multiplier.
-     *
-     * Usually something like 0.1
+     * Frusta of the views of the current frame, the first of which is
+     * {@link #frustum}. There are more than one in the split screen.
+     */
+    private final Frustum[] viewFrusta;
+
+    /** Eye position of each view of the current frame. */
+    private final Vector[] viewEyes;
+
+    /** Number of views in the current frame. */
+    private int viewCount = 1;
+
+    /** Number of rows of the split screen, one per robot shown. */
+    private final int splitRows;
+
+    /**
+     * Whether the split screen shows every robot in the helicopter,
+     * motorcycle and first person modes at once, instead of a single
+     * view. Toggled by 'v', or set by the robotrace.split property.
      */
-    public final static double SPEED_MULTIPLIER = 0.05;
+    private boolean splitScreen = Boolean.getBoolean("robotrace.split");
+
+    /** Views in which each robot is visible, as bits. */
+    private final int[] robotViews;
+
+    /** Cosine and sine of the heading of each robot in the current frame. */
+    private final double[] robotCos, robotSin;
+
+    /** Robots in the order in which every view draws them. */
+    private final int[] drawOrder;
+
+    /** Robots in the ground plane, for picking them with the mouse. */
+    private final RobotGrid robotGrid = new RobotGrid(RobotMotion.LENGTH);
+
+    /** Ray through the mouse position: origin and direction. */
+    private final double[] pickRay = new double[6];
+
+    /** The point on the track that was picked last. */
+    private final TrackHit trackHit = new TrackHit();
+
+    /** Robot that the camera is locked onto by a click, or -1. */
+    private int lockedRobot = -1;
+
+    /** Track whose control point is being dragged, and the point, or -1. */
+    private int draggedTrackNr = -1;
+    private int draggedPoint = -1;
+
+    /** Statistics of the current frame. */
+    private final FrameStats frameStats = new FrameStats();
+
+    /** Short messages at the bottom of the window. */
+    private final StatusLine status = new StatusLine();
 
     /**
-     * Minimum speed.
-     *
-     * Usually something like 0.1
+     * Records the frames into the directory of the robotrace.capture
+     * property, from the start if it is set, or else once 'r' is pressed,
+     * through a ring of robotrace.capture.ring pixel buffers.
+     */
+    private final FrameCapture capture = new FrameCapture(
+            new File(System.getProperty("robotrace.capture", "capture")),
+            null != System.getProperty("robotrace.capture"),
+            Integer.getInteger("robotrace.capture.ring", FrameCapture.RING));
+
+    /**
+     * Time between switches of the robot that the camera follows, in
+     * seconds.
+     */
+    public final static int CAMERA_ROBOT_INTERVAL = 5;
+
+    /**
+     * Time between switches of the camera mode in auto mode, in seconds.
      */
-    public final static double SPEED_MINIMUM = 0.05;
+    public final static int CAMERA_MODE_INTERVAL = 10;
 
     /**
      * Animation speed.
@@ -104,9 +264,131 @@ public class RobotRace extends Base {
     public final static double ANIMATION_SPEED = 4.0;
 
     /**
-     * Last time
+     * Time that a message stays in the status line, in seconds.
+     */
+    public final static double STATUS_SECONDS = 4.0;
+
+    /**
+     * Time that the results of the race stay in the status line, in
+     * seconds.
+     */
+    public final static double RESULTS_SECONDS = 20.0;
+
+    /**
+     * Number of finishers named in the results in the status line.
+     */
+    public final static int RESULTS_SHOWN = 3;
+
+    /**
+     * Largest distance between the ray through the mouse and a control
+     * point of the track for a shift-drag to grab the point.
+     */
+    public final static double GRAB_DISTANCE = 2.0;
+
+    /**
+     * Initial number of simulated seconds per second of wall clock time.
+     */
+    public final static double TIME_SCALE = 1.0;
+
+    /**
+     * Factor by which the '+' and '-' keys change the time scale.
+     */
+    public final static double TIME_SCALE_STEP = 2.0;
+
+    /**
+     * Number of robots in the race.
+     */
+    public final static int ROBOTS = 4;
+
+    /**
+     * Materials of the robots, repeated when there are more robots.
+     */
+    private final static Material[] ROBOT_MATERIALS = new Material[] {
+        Material.GOLD, Material.SILVER, Material.WOOD, Material.ORANGE
+    };
+
+    /**
+     * Largest number of robots shown in the split screen, so that the
+     * views fit in the bits of an int.
+     */
+    public final static int MAX_SPLIT_ROWS = 10;
+
+    /**
+     * Number of laps of the race in the window, or 0 for a race that
+     * never ends.
+     */
+    public final static int RACE_LAPS = 5;
+
+    /**
+     * Estimated GPU memory, in bytes, above which the track geometry
+     * that was used least recently is deleted.
+     */
+    public final static long GPU_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * Camera distance beyond which robots are drawn as merged boxes,
+     * without eyes and limb animation.
+     */
+    public final static double LOD_MEDIUM_DISTANCE = 30;
+
+    /**
+     * Camera distance beyond which robots are drawn as a single box.
+     */
+    public final static double LOD_FAR_DISTANCE = 80;
+
+    /**
+     * Fraction of a level of detail distance by which the camera distance
+     * has to pass it before the level changes, to avoid popping.
+     */
+    public final static double LOD_HYSTERESIS = 0.1;
+
+    /**
+     * Target frames per second of the frame scheduler, unless set by the
+     * robotrace.fps property.
+     */
+    public final static int TARGET_FPS = 60;
+
+    /**
+     * Camera modes of the columns of the split screen: helicopter,
+     * motorcycle and first person. Every robot, up to MAX_SPLIT_ROWS,
+     * has a row.
+     */
+    private final static int[] SPLIT_MODES = new int[] {1, 2, 3};
+
+    /**
+     * Names of the frame scheduler modes, as used by the
+     * robotrace.scheduler property.
      */
-    private int lastTime = 0;
+    private final static String[] SCHEDULER_MODES = new String[] {
+        "fixed", "fast", "vsync", "adaptive"
+    };
+
+    /**
+     * Per quality level of the frame scheduler, from low to high: the
+     * scale of the robot level of detail distances, the number of track
+     * segments, and the number of terrain segments.
+     */
+    private final static double[][] QUALITY_LEVELS = new double[][] {
+        {0.2, 60, 30},
+        {0.35, 120, 50},
+        {0.6, 200, 70},
+        {1.0, 300, 100}
+    };
+
+    /** Scale of the robot level of detail distances. */
+    private double lodScale = 1;
+
+    /** Drives the rendering, once the drawable is initialized. */
+    private FrameScheduler scheduler;
+
+    /** Input events, from the AWT event thread to the render thread. */
+    private final InputQueue input = new InputQueue();
+
+    /** Whether the input listener of the base class has been replaced. */
+    private boolean inputReplaced;
+
+    /** The quality level that the scene is currently drawn at. */
+    private int quality = FrameScheduler.MAX_QUALITY;
 
     /**
      * Random source.
@@ -118,36 +400,77 @@ public class RobotRace extends Base {
      * camera, track, and terrain.
      */
     public RobotRace() {
+        this(null, null);
+    }
 
-        // Create a new array of four robots
-        robots = new Robot[4];
-
-        // Initialize robot 0
-        robots[0] = new Robot(0, Material.GOLD
-            /* add other parameters that characterize this robot */);
+    /**
+     * Constructs this robot race for the given run of the load test, and
+     * to watch the race broadcast at {@code streamAddress}; either may be
+     * null.
+     */
+    public RobotRace(LoadRun loadRun, InetSocketAddress streamAddress) {
+        this.loadRun = loadRun;
+        this.streamAddress = streamAddress;
 
-        // Initialize robot 1
-        robots[1] = new Robot(1, Material.SILVER
-            /* add other parameters that characterize this robot */);
+        // Initialize the race track, on which the robots are placed
+        raceTrack = new RaceTrack();
 
-        // Initialize robot 2
-        robots[2] = new Robot(2, Material.WOOD
-            /* add other parameters that characterize this robot */);
+        // Create the robots, four unless a load test asks for more
+        robots = new Robot[null == loadRun ? ROBOTS : loadRun.robots];
 
-        // Initialize robot 3
-        robots[3] = new Robot(3, Material.ORANGE
-            /* add other parameters that characterize this robot */);
+        // Initialize the robots, in gold, silver, wood and orange
+        for (int id = 0; id < robots.length; id++) {
+            robots[id] = new Robot(id, ROBOT_MATERIALS[id % ROBOT_MATERIALS.length]);
+        }
 
         // Initialize the camera
         camera = new Camera();
 
-        // Initialize the race track
-        raceTrack = new RaceTrack();
+        // Pick robots by the box around their body parts, which extend
+        // backwards from their position
+        robotGrid.setBox(-RobotMotion.WIDTH / 2, -(Robot.B_LEG_POS_Y + Robot.LEG_DEPTH), 0,
+                         RobotMotion.WIDTH / 2, 0, Robot.HEAD_POS_Z + Robot.HEAD_HEIGHT);
+
+        // Set up the views of the split screen, and their shared state
+        splitRows = Math.min(robots.length, MAX_SPLIT_ROWS);
+        viewFrusta = new Frustum[splitRows * SPLIT_MODES.length];
+        viewEyes = new Vector[viewFrusta.length];
+        viewFrusta[0] = frustum;
+        for (int view = 1; view < viewFrusta.length; view++) {
+            viewFrusta[view] = new Frustum();
+        }
+        robotViews = new int[robots.length];
+        robotCos = new double[robots.length];
+        robotSin = new double[robots.length];
+        drawOrder = new int[robots.length];
+        for (int id = 0; id < robots.length; id++) {
+            drawOrder[id] = id;
+        }
 
         // Initialize the terrain
         terrain = new Terrain();
 
         rand = new Random();
+
+        // Initialize the race, and comment on lead changes
+        race = new Race(robots, raceTrack, new Random());
+        race.getRanking().setLaps(RACE_LAPS);
+        race.getProximityDetector().addListener(new RaceEventListener() {
+            @Override
+            public void overtake(int overtaker, int overtaken, int position, double aTime) {
+                // once the race is over, the results stay in the status line
+                if (0 == position && !race.getRanking().isFinished()) {
+                    status.show(String.format("Robot %d takes the lead from robot %d at %.1fs",
+                                              overtaker, overtaken, aTime));
+                }
+            }
+        });
+
+        // Start the simulation, which publishes the first snapshot at once
+        simulation = new RaceSimulation();
+        simulation.start();
+        interpolator = new SnapshotInterpolator(robots.length, simulation.getTickNanos());
+        snapshot = interpolator.update(simulation.getLatestSnapshot(), clock.getNanos());
     }
 
     /**
@@ -196,6 +519,369 @@ public class RobotRace extends Base {
 
         // normalize
         gl.glEnable(GL_NORMALIZE);
+
+        // Replace the fixed rate animator by the frame scheduler.
+        if (null == scheduler) {
+            GLAutoDrawable drawable = findDrawable(Frame.getFrames());
+            if (null != drawable) {
+                String mode = System.getProperty("robotrace.scheduler", "adaptive");
+                int fps = Integer.getInteger("robotrace.fps", TARGET_FPS);
+                int modeIndex = Arrays.asList(SCHEDULER_MODES).indexOf(mode);
+                if (modeIndex < 0) {
+                    modeIndex = FrameScheduler.ADAPTIVE;
+                }
+                WindowBackend backend = new PanelBackend();
+                if ("canvas".equals(System.getProperty("robotrace.backend"))) {
+                    backend = new CanvasBackend();
+                }
+                scheduler = new FrameScheduler(drawable, backend, modeIndex, fps);
+                scheduler.start();
+
+                // Apply the detail of a load test run over that of the quality level
+                if (null != loadRun) {
+                    raceTrack.setSegments(loadRun.trackSegments);
+                    terrain.setSegments(loadRun.terrainSegments);
+                    loadRun.start(drawable);
+                }
+
+                // Free the GPU memory along with the context
+                drawable.addGLEventListener(new GLEventListener() {
+                    @Override
+                    public void init(GLAutoDrawable drawable) {
+                    }
+
+                    @Override
+                    public void display(GLAutoDrawable drawable) {
+                        // after the scene is drawn, before the swap
+                        capture.capture(drawable.getGL().getGL2(),
+                                        drawable.getWidth(), drawable.getHeight());
+                    }
+
+                    @Override
+                    public void reshape(GLAutoDrawable drawable, int x, int y,
+                                        int width, int height) {
+                    }
+
+                    @Override
+                    public void dispose(GLAutoDrawable drawable) {
+                        scheduler.disposed();
+                        resources.releaseAll(drawable.getGL().getGL2());
+                    }
+                });
+            }
+        }
+
+        // Queue the input instead of changing the camera on the AWT thread.
+        if (!inputReplaced) {
+            GLAutoDrawable drawable = findDrawable(Frame.getFrames());
+            if (drawable instanceof Component) {
+                replaceInputListener((Component) drawable);
+                inputReplaced = true;
+            }
+        }
+    }
+
+    /**
+     * Replaces the input listener of the base class on {@code component},
+     * which changes the camera state on the AWT event thread, by one that
+     * queues the events for the render thread.
+     */
+    private void replaceInputListener(Component component) {
+        for (MouseListener listener : component.getMouseListeners()) {
+            if (listener.getClass().getName().startsWith("robotrace.Base")) {
+                component.removeMouseListener(listener);
+            }
+        }
+        for (MouseMotionListener listener : component.getMouseMotionListeners()) {
+            if (listener.getClass().getName().startsWith("robotrace.Base")) {
+                component.removeMouseMotionListener(listener);
+            }
+        }
+        for (MouseWheelListener listener : component.getMouseWheelListeners()) {
+            if (listener.getClass().getName().startsWith("robotrace.Base")) {
+                component.removeMouseWheelListener(listener);
+            }
+        }
+        for (KeyListener listener : component.getKeyListeners()) {
+            if (listener.getClass().getName().startsWith("robotrace.Base")) {
+                component.removeKeyListener(listener);
+            }
+        }
+        InputListener listener = new InputListener();
+        component.addMouseListener(listener);
+        component.addMouseMotionListener(listener);
+        component.addMouseWheelListener(listener);
+        component.addKeyListener(listener);
+    }
+
+    /**
+     * Applies the queued input events to the camera state, on the render
+     * thread. Consecutive drags and wheel turns are merged into one change.
+     */
+    private void applyInput() {
+        while (!input.isEmpty()) {
+            int kind = input.getKind();
+            float x = input.getX();
+            float y = input.getY();
+            input.remove();
+            // Motions add up, while of positions only the last one counts
+            if (InputQueue.ORBIT == kind || InputQueue.WIDEN == kind
+                    || InputQueue.ZOOM == kind) {
+                while (!input.isEmpty() && input.getKind() == kind) {
+                    x += input.getX();
+                    y += input.getY();
+                    input.remove();
+                }
+            } else if (InputQueue.DRAG == kind) {
+                while (!input.isEmpty() && input.getKind() == kind) {
+                    x = input.getX();
+                    y = input.getY();
+                    input.remove();
+                }
+            }
+
+            switch (kind) {
+                case InputQueue.ORBIT:
+                    gs.theta += x * DRAG_PIXEL_TO_RADIAN;
+                    gs.phi = Math.max(PHI_MIN,
+                                      Math.min(PHI_MAX, gs.phi + y * DRAG_PIXEL_TO_RADIAN));
+                    break;
+                case InputQueue.WIDEN:
+                    gs.vWidth = Math.max(VWIDTH_MIN,
+                                         Math.min(VWIDTH_MAX, gs.vWidth + y * DRAG_PIXEL_TO_VWIDTH));
+                    break;
+                case InputQueue.ZOOM:
+                    gs.vDist = (float) Math.max(MIN_CAMERA_DISTANCE,
+                                                gs.vDist * Math.pow(MOUSE_WHEEL_FACTOR, x));
+                    break;
+                case InputQueue.PICK:
+                    pick((int) x, (int) y);
+                    break;
+                case InputQueue.GRAB:
+                    grabControlPoint((int) x, (int) y);
+                    break;
+                case InputQueue.DRAG:
+                    dragControlPoint((int) x, (int) y);
+                    break;
+                case InputQueue.RELEASE:
+                    draggedPoint = -1;
+                    break;
+                case InputQueue.KEY:
+                    if ('r' == (char) x) {
+                        capture.toggle();
+                    } else if ('v' == (char) x) {
+                        splitScreen = !splitScreen;
+                    } else if (!controlClock((char) x)) {
+                        moveCenter((char) x);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Picks what is under the mouse at window position (x, y), as drawn
+     * in the last frame: a robot locks the camera onto it, a point of the
+     * track is shown on the status line, and anything else unlocks the
+     * camera.
+     *
+     * The ray through the mouse follows from the frustum of the view
+     * under it, and is intersected on the CPU, with the robots through
+     * a grid and with the track through its index.
+     */
+    private void pick(int x, int y) {
+        if (!setPickRay(x, y)) {
+            return;
+        }
+        robotGrid.update(robots.length, snapshot.x, snapshot.y, snapshot.z, snapshot.heading);
+        int robot = robotGrid.pick(pickRay[0], pickRay[1], pickRay[2],
+                                   pickRay[3], pickRay[4], pickRay[5]);
+        double trackDistance = raceTrack.getTrackIndex(snapshot.trackNr).intersect(
+                pickRay[0], pickRay[1], pickRay[2], pickRay[3], pickRay[4], pickRay[5],
+                trackHit);
+
+        if (robot >= 0 && robotGrid.getDistance() <= trackDistance) {
+            lockedRobot = robot;
+            status.show("Camera locked onto robot " + robot);
+        } else if (trackDistance < Double.POSITIVE_INFINITY) {
+            status.show(String.format("Track %d at t=%.4f, lane %d (%.2f)", snapshot.trackNr,
+                                      trackHit.t, trackHit.lane, trackHit.lateral));
+        } else if (lockedRobot >= 0) {
+            lockedRobot = -1;
+            status.show("Camera unlocked");
+        }
+    }
+
+    /**
+     * Sets {@code pickRay} to the ray through window position (x, y), as
+     * drawn in the last frame, from the frustum of the view under it.
+     * Returns false if the window has no size.
+     */
+    private boolean setPickRay(int x, int y) {
+        if (gs.w <= 0 || gs.h <= 0) {
+            return false;
+        }
+        // Find the view under the mouse, and the position within it
+        int view = 0;
+        double width = gs.w;
+        double height = gs.h;
+        if (splitScreen && viewCount > 1) {
+            width = gs.w / SPLIT_MODES.length;
+            height = gs.h / splitRows;
+            int column = Math.min((int) (x / width), SPLIT_MODES.length - 1);
+            int row = Math.min((int) (y / height), splitRows - 1);
+            view = row * SPLIT_MODES.length + column;
+            x -= column * width;
+            y -= row * height;
+        }
+        viewFrusta[view].getRay(2 * (x + 0.5) / width - 1, 1 - 2 * (y + 0.5) / height,
+                                pickRay);
+        return true;
+    }
+
+    /**
+     * Grabs the control point of the current track that is nearest to
+     * the ray through window position (x, y), if it is within
+     * {@link #GRAB_DISTANCE} of the ray.
+     */
+    private void grabControlPoint(int x, int y) {
+        draggedTrackNr = snapshot.trackNr;
+        draggedPoint = -1;
+        Vector[] points = raceTrack.getControlPoints(draggedTrackNr);
+        if (null == points) {
+            status.show("The test track has no control points");
+            return;
+        }
+        if (!setPickRay(x, y)) {
+            return;
+        }
+        double best = GRAB_DISTANCE;
+        for (int i = 0; i < points.length; i++) {
+            double px = points[i].x() - pickRay[0];
+            double py = points[i].y() - pickRay[1];
+            double pz = points[i].z() - pickRay[2];
+            double along = Math.max(0, px * pickRay[3] + py * pickRay[4] + pz * pickRay[5]);
+            double ex = px - along * pickRay[3];
+            double ey = py - along * pickRay[4];
+            double ez = pz - along * pickRay[5];
+            double distance = Math.sqrt(ex * ex + ey * ey + ez * ez);
+            if (distance < best) {
+                best = distance;
+                draggedPoint = i;
+            }
+        }
+        status.show(draggedPoint >= 0
+                ? String.format("Dragging control point %d of track %d", draggedPoint, draggedTrackNr)
+                : "No control point of the track here");
+    }
+
+    /**
+     * Moves the grabbed control point to where the ray through window
+     * position (x, y) meets the horizontal plane through the point. Only
+     * the part of the track that the point controls is rebuilt.
+     */
+    private void dragControlPoint(int x, int y) {
+        if (draggedPoint < 0 || draggedTrackNr != snapshot.trackNr || !setPickRay(x, y)
+                || Math.abs(pickRay[5]) < 1e-9) {
+            return;
+        }
+        Vector point = raceTrack.getControlPoints(draggedTrackNr)[draggedPoint];
+        double t = (point.z() - pickRay[2]) / pickRay[5];
+        if (t > 0) {
+            raceTrack.moveControlPoint(draggedTrackNr, draggedPoint,
+                    new Vector(pickRay[0] + t * pickRay[3], pickRay[1] + t * pickRay[4], point.z()));
+        }
+    }
+
+    /**
+     * Controls the simulation clock for a key: 'p' pauses or resumes it,
+     * and '+' and '-' speed it up and slow it down. Returns whether the
+     * key was handled.
+     */
+    private boolean controlClock(char key) {
+        switch (key) {
+            case 'p':
+                if (clock.isPaused()) {
+                    clock.resume();
+                } else {
+                    clock.pause();
+                }
+                return true;
+            case '+':
+                clock.setTimeScale(clock.getTimeScale() * TIME_SCALE_STEP);
+                return true;
+            case '-':
+                clock.setTimeScale(clock.getTimeScale() / TIME_SCALE_STEP);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Moves the center point of the camera for a key, like the base class
+     * does: 'w' and 's' move it forward and back, 'a' and 'd' to the left
+     * and right, and 'q' and 'z' up and down.
+     */
+    private void moveCenter(char key) {
+        Vector forward = new Vector(Math.cos(gs.theta), Math.sin(gs.theta), 0)
+                .scale(CENTER_POINT_CHANGE);
+        Vector side = new Vector(Math.cos(gs.theta + Math.PI / 2),
+                                 Math.sin(gs.theta + Math.PI / 2), 0)
+                .scale(CENTER_POINT_CHANGE);
+        switch (key) {
+            case 'w':
+                gs.cnt = gs.cnt.subtract(forward);
+                break;
+            case 's':
+                gs.cnt = gs.cnt.add(forward);
+                break;
+            case 'a':
+                gs.cnt = gs.cnt.subtract(side);
+                break;
+            case 'd':
+                gs.cnt = gs.cnt.add(side);
+                break;
+            case 'q':
+                gs.cnt = new Vector(gs.cnt.x(), gs.cnt.y(), gs.cnt.z() + CENTER_POINT_CHANGE);
+                break;
+            case 'z':
+                gs.cnt = new Vector(gs.cnt.x(), gs.cnt.y(), gs.cnt.z() - CENTER_POINT_CHANGE);
+                break;
+        }
+    }
+
+    /**
+     * Returns the first OpenGL drawable among the given components and
+     * their descendants, or null if there is none.
+     */
+    private GLAutoDrawable findDrawable(Component[] components) {
+        for (Component component : components) {
+            if (component instanceof GLAutoDrawable) {
+                return (GLAutoDrawable) component;
+            }
+            if (component instanceof Container) {
+                GLAutoDrawable drawable =
+                        findDrawable(((Container) component).getComponents());
+                if (null != drawable) {
+                    return drawable;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies the quality level chosen by the frame scheduler.
+     */
+    private void applyQuality(int level) {
+        if (level == quality) {
+            return;
+        }
+        quality = level;
+        lodScale = QUALITY_LEVELS[level][0];
+        raceTrack.setSegments((int) QUALITY_LEVELS[level][1]);
+        terrain.setSegments((int) QUALITY_LEVELS[level][2]);
     }
 
     /**
@@ -203,6 +889,14 @@ public class RobotRace extends Base {
      */
     @Override
     public void setView() {
+        // Time the frame of a load test run.
+        if (null != loadRun) {
+            loadRun.frame();
+        }
+
+        // Apply the input that arrived since the last frame.
+        applyInput();
+
         // Select part of window.
         gl.glViewport(0, 0, gs.w, gs.h);
 
@@ -217,18 +911,75 @@ public class RobotRace extends Base {
         double fovy = Math.atan((gs.vWidth / 2) / ((zNear + zFar) / 2)) * 2;
         fovy = Math.toDegrees(fovy);
 
-        // Set the perspective.
-        glu.gluPerspective(fovy, (float)gs.w / (float)gs.h, zNear, zFar);
+        // Set the perspective, shared by the views of the split screen.
+        float aspect = (float)gs.w / (float)gs.h;
+        if (splitScreen) {
+            aspect = aspect * splitRows / SPLIT_MODES.length;
+        }
+        glu.gluPerspective(fovy, aspect, zNear, zFar);
 
         // Set camera.
         gl.glMatrixMode(GL_MODELVIEW);
         gl.glLoadIdentity();
 
+        // Interpolate between the latest simulation ticks for this frame.
+        snapshot = interpolator.update(simulation.getLatestSnapshot(), clock.getNanos());
+
+        // Show all robots at once in the split screen
+        if (splitScreen) {
+            setSplitViews(fovy, gs.h > 0 ? aspect : 1, zNear, zFar);
+            return;
+        }
+
         // Update the view according to the camera mode
         camera.update(gs.camMode);
         glu.gluLookAt(camera.eye.x(),    camera.eye.y(),    camera.eye.z(),
                       camera.center.x(), camera.center.y(), camera.center.z(),
                       camera.up.x(),     camera.up.y(),     camera.up.z());
+
+        // Mirror the transforms on the CPU, for culling.
+        frustum.set(fovy, gs.h > 0 ? aspect : 1, zNear, zFar,
+                    camera.eye, camera.center, camera.up);
+        viewEyes[0] = camera.eye;
+        viewCount = 1;
+    }
+
+    /**
+     * Points the camera of every view of the split screen at its robot
+     * and mode, and mirrors the transforms on the CPU. The views load
+     * their view matrix when they are drawn.
+     */
+    private void setSplitViews(double fovy, double aspect, double zNear, double zFar) {
+        viewCount = splitRows * SPLIT_MODES.length;
+        for (int view = 0; view < viewCount; view++) {
+            camera.update(SPLIT_MODES[view % SPLIT_MODES.length],
+                          view / SPLIT_MODES.length);
+            viewFrusta[view].set(fovy, aspect, zNear, zFar,
+                                 camera.eye, camera.center, camera.up);
+            viewEyes[view] = camera.eye;
+        }
+    }
+
+    /**
+     * Selects the part of the window of {@code view} in the split screen,
+     * with a row per robot and a column per mode, and loads its view
+     * matrix.
+     */
+    private void applySplitView(int view) {
+        int width = gs.w / SPLIT_MODES.length;
+        int height = gs.h / splitRows;
+        int row = view / SPLIT_MODES.length;
+        int column = view % SPLIT_MODES.length;
+        gl.glViewport(column * width, gs.h - (row + 1) * height, width, height);
+        gl.glMatrixMode(GL_MODELVIEW);
+        gl.glLoadTransposeMatrixd(viewFrusta[view].getViewMatrix(), 0);
+    }
+
+    /**
+     * Returns the statistics of the last drawn frame.
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
     }
 
     /**
@@ -248,43 +999,46 @@ public class RobotRace extends Base {
         // Set color to black.
         gl.glColor3f(0f, 0f, 0f);
 
-        gl.glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
-
-        // Draw the axis frame
-        if (gs.showAxes) {
-            // enable material colors
-            gl.glEnable(GL_COLOR_MATERIAL);
-            drawAxisFrame();
-            gl.glDisable(GL_COLOR_MATERIAL);
+        frameStats.reset();
+        resources.beginFrame();
+
+        // Follow the frame scheduler.
+        if (null != scheduler) {
+            scheduler.applySwapInterval(gl);
+            applyQuality(scheduler.getQuality());
+            frameStats.schedulerMode = scheduler.getModeName();
+            frameStats.backend = scheduler.getBackendName();
+            frameStats.frameMillis = scheduler.getFrameMillis();
+            frameStats.headroom = scheduler.getHeadroom();
         }
+        frameStats.quality = quality;
 
-        determineSpeed();
-
-        // Draw the robots
-        
-            for (int id = 0; id < 4; id++) {
-                gl.glPushMatrix();
-                // get the robot's position
-                Vector position = robots[id].getPosition(gs.tAnim);
-                // translate to the position
-                gl.glTranslated(position.x(), position.y(), position.z());
-
-                // rotate the robot
-                Vector tangent = robots[id].getPositionTangent(gs.tAnim);
-                double angle = Math.toDegrees(Math.atan2(-tangent.x(), tangent.y()));
-                gl.glRotated(angle, 0, 0, 1);
+        gl.glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
 
-                // draw the robot
-                robots[id].draw(gs.showStick, gs.tAnim);
+        // Do the work that all views share once: the culling, the level
+        // of detail, pose and drawing order of the robots
+        raceTrack.prepare(snapshot.trackNr);
+        terrain.prepare();
+        prepareRobots();
+        frameStats.views = viewCount;
 
-                gl.glPopMatrix();
+        for (int view = 0; view < viewCount; view++) {
+            if (splitScreen) {
+                applySplitView(view);
             }
-
-        // Draw race track
-        raceTrack.draw(gs.trackNr);
-
-        // Draw terrain
-        terrain.draw();
+            drawView(view);
+        }
+        if (splitScreen) {
+            gl.glViewport(0, 0, gs.w, gs.h);
+        }
+        status.draw();
+
+        // Stay within the GPU memory budget
+        resources.enforceBudget();
+        frameStats.gpuBytes = resources.getBytes();
+        frameStats.gpuEvictions = resources.getEvictions();
+        frameStats.framesCaptured = capture.getCaptured();
+        frameStats.framesSkipped = capture.getSkipped();
         /*
 
         // Unit box around origin.
@@ -304,37 +1058,151 @@ public class RobotRace extends Base {
     }
 
     /**
-     * Determine speed.
+     * Determines in which views each robot is visible, and selects the
+     * level of detail and the pose of the visible robots, once for all
+     * views. Then orders the robots by level of detail and material, so
+     * every view draws robots of the same kind one after another.
      */
-    public void determineSpeed()
-    {
-        if (Math.round(gs.tAnim) != lastTime) {
-            for (int i = 0; i < 4; i++) {
-                robots[i].setSpeed(SPEED_MINIMUM + rand.nextDouble() * SPEED_MULTIPLIER, gs.tAnim);
+    private void prepareRobots() {
+        for (int id = 0; id < robots.length; id++) {
+            robotViews[id] = robots[id].getVisibleViews(
+                    snapshot.x[id], snapshot.y[id], snapshot.z[id],
+                    snapshot.tangentX[id], snapshot.tangentY[id]);
+            frameStats.robotsCulled += viewCount - Integer.bitCount(robotViews[id]);
+            if (0 == robotViews[id]) {
+                continue;
             }
-            lastTime = Math.round(gs.tAnim);
+            robots[id].selectLevelOfDetail(getDetailDistance(id));
+            robots[id].setPose(snapshot.aTime);
+            robotCos[id] = Math.cos(snapshot.heading[id]);
+            robotSin[id] = Math.sin(snapshot.heading[id]);
+        }
+
+        // insertion sort, as the order hardly changes between frames
+        for (int i = 1; i < drawOrder.length; i++) {
+            int id = drawOrder[i];
+            int j = i - 1;
+            while (j >= 0 && compareDrawOrder(drawOrder[j], id) > 0) {
+                drawOrder[j + 1] = drawOrder[j];
+                j--;
+            }
+            drawOrder[j + 1] = id;
         }
     }
 
     /**
-     * Draw a box.
-     *
-     * Not necessarily a cube. This method will scale, and then scale back.
-     *
-     * @param w Width (to the x-axis)
-     * @param d Depth (to the y-axis)
-     * @param h Height (to the z-axis)
-     * @param wired Wired cube or not
+     * Compares robots {@code a} and {@code b} by level of detail, then by
+     * material.
      */
-    public void drawBox(double w, double d, double h, boolean wired)
+    private int compareDrawOrder(int a, int b) {
+        if (robots[a].getLevelOfDetail() != robots[b].getLevelOfDetail()) {
+            return robots[a].getLevelOfDetail() - robots[b].getLevelOfDetail();
+        }
+        return robots[a].getMaterial().ordinal() - robots[b].getMaterial().ordinal();
+    }
+
+    /**
+     * Returns the camera distance by which the level of detail of robot
+     * {@code id} is selected. In the split screen this is the distance to
+     * the nearest view that shows it, scaled up as the views are smaller
+     * than the window.
+     */
+    private double getDetailDistance(int id) {
+        if (!splitScreen) {
+            return camera.getRobotDistance(id);
+        }
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int view = 0; view < viewCount; view++) {
+            if (0 != (robotViews[id] & (1 << view))) {
+                double dx = snapshot.x[id] - viewEyes[view].x();
+                double dy = snapshot.y[id] - viewEyes[view].y();
+                double dz = snapshot.z[id] - viewEyes[view].z();
+                nearest = Math.min(nearest, Math.sqrt(dx * dx + dy * dy + dz * dz));
+            }
+        }
+        return nearest * splitRows;
+    }
+
+    /**
+     * Draws {@code view} of the prepared scene, with its view matrix
+     * loaded.
+     */
+    private void drawView(int view) {
+        // Draw the axis frame
+        if (gs.showAxes) {
+            // enable material colors
+            gl.glEnable(GL_COLOR_MATERIAL);
+            drawAxisFrame();
+            gl.glDisable(GL_COLOR_MATERIAL);
+        }
+
+        // Draw the robots, as of the latest simulation tick. Each robot
+        // loads its own model view matrices, so save the view once
+        gl.glPushMatrix();
+        double[] viewMatrix = viewFrusta[view].getViewMatrix();
+            for (int i = 0; i < drawOrder.length; i++) {
+                int id = drawOrder[i];
+                // skip the robot if it is out of view
+                if (0 == (robotViews[id] & (1 << view))) {
+                    continue;
+                }
+                frameStats.robotsDrawn++;
+
+                // translate to the position and rotate the robot
+                double cos = robotCos[id];
+                double sin = robotSin[id];
+                double x = snapshot.x[id];
+                double y = snapshot.y[id];
+                double z = snapshot.z[id];
+                for (int row = 0; row < 4; row++) {
+                    double vx = viewMatrix[4 * row];
+                    double vy = viewMatrix[4 * row + 1];
+                    double vz = viewMatrix[4 * row + 2];
+                    robotModelView[row] = (float) (vx * cos + vy * sin);
+                    robotModelView[4 + row] = (float) (vy * cos - vx * sin);
+                    robotModelView[8 + row] = (float) vz;
+                    robotModelView[12 + row] = (float) (vx * x + vy * y + vz * z
+                                                        + viewMatrix[4 * row + 3]);
+                }
+
+                // draw the robot, at the level of detail selected for all views
+                robots[id].draw(gs.showStick, robotModelView);
+            }
+        gl.glPopMatrix();
+
+        // Draw race track, which a broadcast race may choose
+        raceTrack.draw(view);
+
+        // Draw terrain
+        terrain.draw(view);
+    }
+
+    /**
+     * Draw a box.
+     *
+     * Not necessarily a cube. This method will scale, and then scale back.
+     *
+     * @param w Width (to the x-axis)
+     * @param d Depth (to the y-axis)
+     * @param h Height (to the z-axis)
+     * @param wired Wired cube or not
+     */
+    public void drawBox(double w, double d, double h, boolean wired)
     {
         gl.glPushMatrix();
         gl.glScaled(w, d, h);
-        if (wired) {
-            glut.glutWireCube(1f);
-        } else {
-            glut.glutSolidCube(1f);
-        }
+        primitives.drawCube(wired);
+        gl.glPopMatrix();
+    }
+
+    /**
+     * Draw a sphere with the given radius around the origin.
+     */
+    public void drawSphere(double radius, int slices, int stacks, boolean wired)
+    {
+        gl.glPushMatrix();
+        gl.glScaled(radius, radius, radius);
+        primitives.drawSphere(slices, stacks, wired);
         gl.glPopMatrix();
     }
 
@@ -347,11 +1215,8 @@ public class RobotRace extends Base {
         gl.glPushMatrix();
         v = v.cross(Vector.Z);
         gl.glRotated(-90, v.x(), v.y(), v.z());
-        if (wired) {
-            glut.glutWireCone(base, height, slices, stacks);
-        } else {
-            glut.glutSolidCone(base, height, slices, stacks);
-        }
+        gl.glScaled(base, base, height);
+        primitives.drawCone(slices, stacks, wired);
         gl.glPopMatrix();
     }
 
@@ -375,7 +1240,7 @@ public class RobotRace extends Base {
         // translate
         gl.glTranslated(v.x(), v.y(), v.z());
         // draw cube
-        glut.glutSolidCube(size);
+        drawBox(size, size, size, false);
 
         // draw the cone
         // first, normalize, and scale by half the size of the cube
@@ -398,7 +1263,7 @@ public class RobotRace extends Base {
     public void drawAxisFrame() {
         // draw origin
         gl.glColor3f(1f, 1f, 0f);
-        glut.glutSolidSphere(0.032f, 32, 32);
+        drawSphere(0.032, 32, 32, false);
 
         gl.glColor3f(1f, 0f, 0f);
         drawAxis(Vector.X);
@@ -413,17 +1278,529 @@ public class RobotRace extends Base {
     }
 
     /**
-     * Rotate a body part.
+     * An OpenGL object, or a range of display lists, known to the
+     * {@link GpuResources}.
+     */
+    private static class GpuResource {
+
+        /** Kind of object: one of the kinds of {@link GpuResources}. */
+        public final int kind;
+
+        /** Name of the object, or of the first display list. */
+        public final int name;
+
+        /** Number of display lists, or 1. */
+        public final int count;
+
+        /** Estimated size on the GPU, in bytes. */
+        public final long bytes;
+
+        /** Description, for reports. */
+        public final String label;
+
+        /** Owner to notify when the object is deleted, or null. */
+        public final ResourceOwner owner;
+
+        /**
+         * Whether the object stays cached when it has no users left, until
+         * it is evicted to stay within the budget.
+         */
+        public final boolean evictable;
+
+        /** Number of users that hold on to the object. */
+        public int references = 1;
+
+        /** Number of the last frame in which the object was used. */
+        public long lastUsed;
+
+        /**
+         * Constructs the record of an object.
+         */
+        public GpuResource(int kind, int name, int count, long bytes,
+                           String label, ResourceOwner owner, boolean evictable) {
+            this.kind = kind;
+            this.name = name;
+            this.count = count;
+            this.bytes = bytes;
+            this.label = label;
+            this.owner = owner;
+            this.evictable = evictable;
+        }
+    }
+
+    /**
+     * Notified when the {@link GpuResources} delete one of its objects
+     * behind its back.
+     */
+    private interface ResourceOwner {
+
+        /**
+         * Called after {@code resource} was deleted, to stay within the
+         * budget, because it became stale or because the OpenGL context was
+         * disposed; the owner forgets the object and creates it again when
+         * it needs it.
+         */
+        void evicted(GpuResource resource);
+    }
+
+    /**
+     * Keeps track of the display lists, buffers and textures that are
+     * created, with their estimated sizes.
      *
-     * @param aTime
-     * @param axis Axis to rotate over
-     * @param trans Z-translation.
+     * Objects are reference counted, and deleted when the last user
+     * releases them. Evictable objects, the track geometry, can be
+     * rebuilt, so they stay cached without users instead, and the least
+     * recently used of those are evicted when the total exceeds
+     * {@link #GPU_MEMORY_BUDGET}. Everything that is left is deleted when
+     * the OpenGL context is disposed. Unless an object is released, its
+     * owner is notified of the deletion, so that it does not use the
+     * deleted name.
      */
-    public void rotateBodyPart(float aTime, Vector axis, double trans)
-    {
-        gl.glTranslated(0, 0, trans);
-        gl.glRotated(Math.sin(aTime * ANIMATION_SPEED) * 45, axis.x(), axis.y(), axis.z());
-        gl.glTranslated(0, 0, trans * -1);
+    private class GpuResources {
+
+        // kinds of objects
+        public final static int LIST = 0;
+        public final static int BUFFER = 1;
+        public final static int TEXTURE = 2;
+
+        /** The objects that exist. */
+        private final List<GpuResource> resources = new ArrayList<GpuResource>();
+
+        /** Estimated size of all objects, in bytes. */
+        private long bytes = 0;
+
+        /** Number of objects evicted so far. */
+        private int evictions = 0;
+
+        /** Number of the current frame. */
+        private long frame = 0;
+
+        /**
+         * Registers an object that was created, with its creator as its
+         * only user, and returns its record. The {@code owner}, if not
+         * null, is notified when the object is deleted other than by
+         * {@link #release}; only an object with an owner may be
+         * {@code evictable}.
+         */
+        public GpuResource register(int kind, int name, int count, long bytes,
+                                    String label, ResourceOwner owner,
+                                    boolean evictable) {
+            GpuResource resource = new GpuResource(kind, name, count, bytes,
+                                                   label, owner, evictable);
+            resource.lastUsed = frame;
+            resources.add(resource);
+            this.bytes += bytes;
+            return resource;
+        }
+
+        /**
+         * Adds a user of {@code resource}, which may not be evicted while
+         * it has users.
+         */
+        public void retain(GpuResource resource) {
+            resource.references++;
+        }
+
+        /**
+         * Removes a user of {@code resource}. When it was the last one,
+         * the object is deleted, or for an evictable object, left to be
+         * evicted. Does nothing for null.
+         */
+        public void release(GpuResource resource) {
+            if (null != resource && --resource.references == 0 && !resource.evictable) {
+                delete(gl, resource);
+            }
+        }
+
+        /**
+         * Deletes the object of {@code resource} at once, whatever its
+         * users, because it became stale, and notifies its owner. Does
+         * nothing for null.
+         */
+        public void discard(GpuResource resource) {
+            if (null != resource) {
+                discard(gl, resource);
+            }
+        }
+
+        /**
+         * Marks {@code resource} as used in the current frame.
+         */
+        public void touch(GpuResource resource) {
+            resource.lastUsed = frame;
+        }
+
+        /**
+         * Starts a new frame.
+         */
+        public void beginFrame() {
+            frame++;
+        }
+
+        /**
+         * Evicts the least recently used evictable objects without users
+         * until the total size is within the budget. Objects that were used
+         * in the current frame stay.
+         */
+        public void enforceBudget() {
+            while (bytes > GPU_MEMORY_BUDGET) {
+                GpuResource oldest = null;
+                for (int i = 0; i < resources.size(); i++) {
+                    GpuResource resource = resources.get(i);
+                    if (resource.evictable && 0 == resource.references
+                            && resource.lastUsed < frame
+                            && (null == oldest || resource.lastUsed < oldest.lastUsed)) {
+                        oldest = resource;
+                    }
+                }
+                if (null == oldest) {
+                    return;
+                }
+                evictions++;
+                discard(gl, oldest);
+            }
+        }
+
+        /**
+         * Deletes all objects, when the OpenGL context is disposed, and
+         * notifies their owners.
+         */
+        public void releaseAll(GL2 gl) {
+            while (!resources.isEmpty()) {
+                discard(gl, resources.get(resources.size() - 1));
+            }
+        }
+
+        /**
+         * Returns the estimated size of all objects, in bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of objects evicted so far.
+         */
+        public int getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Deletes the object of {@code resource} behind the back of its
+         * owner, and notifies the owner.
+         */
+        private void discard(GL2 gl, GpuResource resource) {
+            delete(gl, resource);
+            if (null != resource.owner) {
+                resource.owner.evicted(resource);
+            }
+        }
+
+        /**
+         * Deletes the object of {@code resource}.
+         */
+        private void delete(GL2 gl, GpuResource resource) {
+            if (LIST == resource.kind) {
+                gl.glDeleteLists(resource.name, resource.count);
+            } else if (BUFFER == resource.kind) {
+                gl.glDeleteBuffers(1, new int[] {resource.name}, 0);
+            } else {
+                gl.glDeleteTextures(1, new int[] {resource.name}, 0);
+            }
+            resources.remove(resource);
+            bytes -= resource.bytes;
+        }
+
+        /**
+         * Textual format, one line per object.
+         */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("GPU memory: %.1f of %.1f MB, %d evictions%n",
+                    bytes / 1048576.0, GPU_MEMORY_BUDGET / 1048576.0, evictions));
+            for (GpuResource resource : resources) {
+                result.append(String.format("  %-24s %8.1f kB%n", resource.label,
+                        resource.bytes / 1024.0));
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Cache of tessellated primitives, replacing the GLUT shapes that
+     * are tessellated and streamed in immediate mode on every call.
+     *
+     * Every primitive is tessellated once at unit size into a vertex
+     * buffer with interleaved normals and vertices, and is scaled to the
+     * requested size by the modelview matrix. Primitives are therefore
+     * keyed only by their kind, slices, stacks, and whether they are
+     * wired.
+     */
+    private class PrimitiveCache implements ResourceOwner {
+
+        // kinds of primitives
+        public final static int CUBE = 0;
+        public final static int CONE = 1;
+        public final static int SPHERE = 2;
+
+        /** The primitives that have been tessellated. */
+        private final List<PrimitiveMesh> meshes = new ArrayList<PrimitiveMesh>();
+
+        /**
+         * Draws a cube of size 1, centered around the origin.
+         */
+        public void drawCube(boolean wired) {
+            get(CUBE, 0, 0, wired).draw();
+        }
+
+        /**
+         * Draws a cone with its base of radius 1 around the origin and
+         * its apex at (0, 0, 1).
+         */
+        public void drawCone(int slices, int stacks, boolean wired) {
+            get(CONE, slices, stacks, wired).draw();
+        }
+
+        /**
+         * Draws a sphere of radius 1 around the origin.
+         */
+        public void drawSphere(int slices, int stacks, boolean wired) {
+            get(SPHERE, slices, stacks, wired).draw();
+        }
+
+        /**
+         * Returns the mesh of the given primitive, tessellating it if it is
+         * not in the cache yet. The cache holds only a handful of meshes,
+         * so a linear search is cheap and does not allocate.
+         */
+        private PrimitiveMesh get(int kind, int slices, int stacks, boolean wired) {
+            for (int i = 0; i < meshes.size(); i++) {
+                PrimitiveMesh mesh = meshes.get(i);
+                if (mesh.kind == kind && mesh.slices == slices
+                        && mesh.stacks == stacks && mesh.wired == wired) {
+                    return mesh;
+                }
+            }
+            PrimitiveMesh mesh = new PrimitiveMesh(kind, slices, stacks, wired);
+            meshes.add(mesh);
+            return mesh;
+        }
+
+        /**
+         * Forgets the mesh whose vertex buffer was deleted along with the
+         * OpenGL context; it is tessellated again when drawn next.
+         */
+        @Override
+        public void evicted(GpuResource resource) {
+            for (int i = 0; i < meshes.size(); i++) {
+                if (resource == meshes.get(i).resource) {
+                    meshes.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A primitive, tessellated into a vertex buffer.
+     */
+    private class PrimitiveMesh {
+
+        /** The parameters of the primitive. */
+        private final int kind, slices, stacks;
+        private final boolean wired;
+
+        /** Interleaved normals and vertices, while tessellating. */
+        private float[] data = new float[96];
+
+        /** Number of floats in data. */
+        private int size = 0;
+
+        /** The vertex buffer. */
+        private final int buffer;
+
+        /** The vertex buffer on the GPU. */
+        private final GpuResource resource;
+
+        /** Number of vertices in the buffer. */
+        private final int vertexCount;
+
+        /**
+         * Tessellates the given primitive and uploads it to a vertex buffer.
+         */
+        public PrimitiveMesh(int kind, int slices, int stacks, boolean wired) {
+            this.kind = kind;
+            this.slices = slices;
+            this.stacks = stacks;
+            this.wired = wired;
+
+            if (PrimitiveCache.CUBE == kind) {
+                tessellateCube();
+            } else if (PrimitiveCache.CONE == kind) {
+                tessellateCone();
+            } else {
+                tessellateSphere();
+            }
+
+            vertexCount = size / 6;
+            int[] buffers = new int[1];
+            gl.glGenBuffers(1, buffers, 0);
+            buffer = buffers[0];
+            gl.glBindBuffer(GL_ARRAY_BUFFER, buffer);
+            gl.glBufferData(GL_ARRAY_BUFFER, size * 4L,
+                            FloatBuffer.wrap(data, 0, size), GL_STATIC_DRAW);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+            resource = resources.register(GpuResources.BUFFER, buffer, 1, size * 4L,
+                    "primitive " + kind + " " + slices + "x" + stacks, primitives, false);
+            data = null;
+        }
+
+        /**
+         * Draws the primitive from its vertex buffer.
+         */
+        public void draw() {
+            gl.glBindBuffer(GL_ARRAY_BUFFER, buffer);
+            gl.glInterleavedArrays(GL_N3F_V3F, 0, 0L);
+            gl.glDrawArrays(wired ? GL_LINES : GL_TRIANGLES, 0, vertexCount);
+            gl.glDisableClientState(GL_VERTEX_ARRAY);
+            gl.glDisableClientState(GL_NORMAL_ARRAY);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+
+        /**
+         * Adds a vertex with the given normal.
+         */
+        private void add(double nx, double ny, double nz,
+                         double x, double y, double z) {
+            if (size + 6 > data.length) {
+                data = Arrays.copyOf(data, 2 * data.length);
+            }
+            data[size++] = (float) nx;
+            data[size++] = (float) ny;
+            data[size++] = (float) nz;
+            data[size++] = (float) x;
+            data[size++] = (float) y;
+            data[size++] = (float) z;
+        }
+
+        /**
+         * Tessellates a cube of size 1 around the origin.
+         */
+        private void tessellateCube() {
+            // per axis and side, the face is spanned by the two other axes
+            for (int axis = 0; axis < 3; axis++) {
+                for (int side = -1; side <= 1; side += 2) {
+                    double[][] corners = new double[4][3];
+                    for (int c = 0; c < 4; c++) {
+                        double u = (c == 1 || c == 2) ? 0.5 : -0.5;
+                        double v = (c >= 2) ? 0.5 : -0.5;
+                        corners[c][axis] = 0.5 * side;
+                        // keep the faces counterclockwise seen from outside
+                        corners[c][(axis + 1) % 3] = side * u;
+                        corners[c][(axis + 2) % 3] = v;
+                    }
+                    double[] normal = new double[3];
+                    normal[axis] = side;
+                    if (wired) {
+                        for (int c = 0; c < 4; c++) {
+                            addCorner(normal, corners[c]);
+                            addCorner(normal, corners[(c + 1) % 4]);
+                        }
+                    } else {
+                        int[] order = new int[] {0, 1, 2, 0, 2, 3};
+                        for (int c : order) {
+                            addCorner(normal, corners[c]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds a corner of a cube face.
+         */
+        private void addCorner(double[] normal, double[] corner) {
+            add(normal[0], normal[1], normal[2], corner[0], corner[1], corner[2]);
+        }
+
+        /**
+         * Tessellates a cone with base radius 1 and height 1.
+         */
+        private void tessellateCone() {
+            // the side of the cone makes an angle of 45 degrees
+            double slope = Math.sqrt(0.5);
+            for (int i = 0; i < slices; i++) {
+                double a0 = 2 * Math.PI * i / slices;
+                double a1 = 2 * Math.PI * (i + 1) / slices;
+                double c0 = Math.cos(a0), s0 = Math.sin(a0);
+                double c1 = Math.cos(a1), s1 = Math.sin(a1);
+                for (int j = 0; j < stacks; j++) {
+                    double z0 = j / (double) stacks;
+                    double z1 = (j + 1) / (double) stacks;
+                    double r0 = 1 - z0;
+                    double r1 = 1 - z1;
+                    if (wired) {
+                        // ring at the bottom of the stack, and a line up
+                        add(c0 * slope, s0 * slope, slope, r0 * c0, r0 * s0, z0);
+                        add(c1 * slope, s1 * slope, slope, r0 * c1, r0 * s1, z0);
+                        add(c0 * slope, s0 * slope, slope, r0 * c0, r0 * s0, z0);
+                        add(c0 * slope, s0 * slope, slope, r1 * c0, r1 * s0, z1);
+                    } else {
+                        add(c0 * slope, s0 * slope, slope, r0 * c0, r0 * s0, z0);
+                        add(c1 * slope, s1 * slope, slope, r0 * c1, r0 * s1, z0);
+                        add(c1 * slope, s1 * slope, slope, r1 * c1, r1 * s1, z1);
+                        add(c0 * slope, s0 * slope, slope, r0 * c0, r0 * s0, z0);
+                        add(c1 * slope, s1 * slope, slope, r1 * c1, r1 * s1, z1);
+                        add(c0 * slope, s0 * slope, slope, r1 * c0, r1 * s0, z1);
+                    }
+                }
+                if (!wired) {
+                    // base
+                    add(0, 0, -1, 0, 0, 0);
+                    add(0, 0, -1, c1, s1, 0);
+                    add(0, 0, -1, c0, s0, 0);
+                }
+            }
+        }
+
+        /**
+         * Tessellates a sphere of radius 1.
+         */
+        private void tessellateSphere() {
+            for (int j = 0; j < stacks; j++) {
+                double p0 = Math.PI * j / stacks - Math.PI / 2;
+                double p1 = Math.PI * (j + 1) / stacks - Math.PI / 2;
+                for (int i = 0; i < slices; i++) {
+                    double a0 = 2 * Math.PI * i / slices;
+                    double a1 = 2 * Math.PI * (i + 1) / slices;
+                    if (wired) {
+                        addSpherePoint(a0, p0);
+                        addSpherePoint(a1, p0);
+                        addSpherePoint(a0, p0);
+                        addSpherePoint(a0, p1);
+                    } else {
+                        addSpherePoint(a0, p0);
+                        addSpherePoint(a1, p0);
+                        addSpherePoint(a1, p1);
+                        addSpherePoint(a0, p0);
+                        addSpherePoint(a1, p1);
+                        addSpherePoint(a0, p1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the point on the unit sphere at the given longitude and
+         * latitude, which is also its normal.
+         */
+        private void addSpherePoint(double longitude, double latitude) {
+            double x = Math.cos(longitude) * Math.cos(latitude);
+            double y = Math.sin(longitude) * Math.cos(latitude);
+            double z = Math.sin(latitude);
+            add(x, y, z, x, y, z);
+        }
     }
 
     /**
@@ -532,26 +1909,233 @@ public class RobotRace extends Base {
     }
 
     /**
-     * Represents a Robot, to be implemented according to the Assignments.
-     *
-     * Robot design:
+     * The walk cycle of the robots, sampled once into a table of poses.
      *
-     * (right) side (left or right, doesn't matter, except for the origin):
-     *
-     *  \   +   /
-     *  =========
-     *  =========
-     *  /       \
-     * *
-     *
-     * "/" and "\", leg or arm
-     * "=" torso
-     * "+" head
-     *
-     * "*" means the origin, which is on the front side of the robot
-     *
-     * Legs rotate from side to side, with an angle around 45 degrees. Under
-     * its legs, there are nano-sized rollers that will translate this
+     * A pose holds the matrix of every body part, from a unit cube (or
+     * for the eyes, a unit cone) to its place in the robot, including the
+     * swing of the legs and arms. Robots only differ in the phase of their
+     * cycle, so a robot gets its palette of matrices by interpolating
+     * between two poses, without any trigonometry.
+     */
+    private static class PoseTable {
+
+        // body parts
+        public final static int FRONT_LEG = 0;
+        public final static int BACK_LEG = 1;
+        public final static int FRONT_ARM = 2;
+        public final static int BACK_ARM = 3;
+        public final static int TORSO = 4;
+        public final static int HEAD = 5;
+        public final static int LEFT_EYE = 6;
+        public final static int RIGHT_EYE = 7;
+
+        /** Number of body parts. */
+        public final static int PARTS = 8;
+
+        /** Number of floats in a palette: a 4x4 matrix per part. */
+        public final static int PALETTE_SIZE = 16 * PARTS;
+
+        /** Number of poses sampled over one cycle. */
+        public final static int POSES = 64;
+
+        /** Largest swing of the legs and arms, in degrees. */
+        public final static double SWING = 45;
+
+        /** The palettes of the poses, column-major; the last repeats the first. */
+        private final float[] poses = new float[(POSES + 1) * PALETTE_SIZE];
+
+        /**
+         * Samples the walk cycle.
+         */
+        public PoseTable() {
+            double[] m = new double[16];
+            for (int pose = 0; pose <= POSES; pose++) {
+                double angle = Math.sin(2 * Math.PI * pose / POSES) * SWING;
+                int offset = pose * PALETTE_SIZE;
+
+                limb(m, 0, -(Robot.LEG_DEPTH / 2), Robot.LEG_HEIGHT / 2,
+                     angle, Vector.Y, 0.15);
+                scale(m, Robot.LEG_WIDTH, Robot.LEG_DEPTH, Robot.LEG_HEIGHT);
+                store(m, offset + 16 * FRONT_LEG);
+
+                limb(m, Robot.B_LEG_POS_X, -(Robot.B_LEG_POS_Y + Robot.LEG_DEPTH / 2),
+                     Robot.B_LEG_POS_Z + Robot.LEG_HEIGHT / 2, -angle, Vector.Y, 0.15);
+                scale(m, Robot.LEG_WIDTH, Robot.LEG_DEPTH, Robot.LEG_HEIGHT);
+                store(m, offset + 16 * BACK_LEG);
+
+                limb(m, Robot.F_ARM_POS_X, -(Robot.F_ARM_POS_Y + Robot.ARM_DEPTH / 2),
+                     Robot.F_ARM_POS_Z + Robot.ARM_HEIGHT / 2, -angle, Vector.X, -0.15);
+                scale(m, Robot.ARM_WIDTH, Robot.ARM_DEPTH, Robot.ARM_HEIGHT);
+                store(m, offset + 16 * FRONT_ARM);
+
+                limb(m, Robot.B_ARM_POS_X, -(Robot.B_ARM_POS_Y + Robot.ARM_DEPTH / 2),
+                     Robot.B_ARM_POS_Z + Robot.ARM_HEIGHT / 2, angle, Vector.X, -0.15);
+                scale(m, Robot.ARM_WIDTH, Robot.ARM_DEPTH, Robot.ARM_HEIGHT);
+                store(m, offset + 16 * BACK_ARM);
+
+                identity(m);
+                translate(m, Robot.TORSO_POS_X, -(Robot.TORSO_POS_Y + Robot.TORSO_DEPTH / 2),
+                          Robot.TORSO_POS_Z + Robot.TORSO_HEIGHT / 2);
+                scale(m, Robot.TORSO_WIDTH, Robot.TORSO_DEPTH, Robot.TORSO_HEIGHT);
+                store(m, offset + 16 * TORSO);
+
+                identity(m);
+                translate(m, Robot.HEAD_POS_X, -(Robot.HEAD_POS_Y + Robot.HEAD_DEPTH / 2),
+                          Robot.HEAD_POS_Z + Robot.HEAD_HEIGHT / 2);
+                scale(m, Robot.HEAD_WIDTH, Robot.HEAD_DEPTH, Robot.HEAD_HEIGHT);
+                store(m, offset + 16 * HEAD);
+
+                eye(m, Robot.L_EYE_POS_X, -Robot.L_EYE_POS_Y, Robot.L_EYE_POS_Z);
+                store(m, offset + 16 * LEFT_EYE);
+
+                eye(m, Robot.R_EYE_POS_X, -Robot.R_EYE_POS_Y, Robot.R_EYE_POS_Z);
+                store(m, offset + 16 * RIGHT_EYE);
+            }
+        }
+
+        /**
+         * Stores the palette at {@code cycle}, in cycles of the walk, in
+         * {@code palette}.
+         */
+        public void getPalette(double cycle, float[] palette) {
+            double sample = (cycle - Math.floor(cycle)) * POSES;
+            int pose = Math.min((int) sample, POSES - 1);
+            float f = (float) (sample - pose);
+            int a = pose * PALETTE_SIZE;
+            int b = a + PALETTE_SIZE;
+            for (int i = 0; i < PALETTE_SIZE; i++) {
+                palette[i] = poses[a + i] + f * (poses[b + i] - poses[a + i]);
+            }
+        }
+
+        /**
+         * Stores the product of the column-major matrices {@code a} and the
+         * matrix at {@code offset} in {@code b} in {@code result}.
+         */
+        public static void multiply(float[] a, float[] b, int offset, float[] result) {
+            for (int col = 0; col < 4; col++) {
+                for (int row = 0; row < 4; row++) {
+                    result[4 * col + row] = a[row] * b[offset + 4 * col]
+                            + a[4 + row] * b[offset + 4 * col + 1]
+                            + a[8 + row] * b[offset + 4 * col + 2]
+                            + a[12 + row] * b[offset + 4 * col + 3];
+                }
+            }
+        }
+
+        /**
+         * Sets {@code m} to a limb at (x, y, z), swung by {@code angle}
+         * degrees around {@code axis} through its joint, which lies
+         * {@code joint} above its center.
+         */
+        private static void limb(double[] m, double x, double y, double z,
+                                 double angle, Vector axis, double joint) {
+            identity(m);
+            translate(m, x, y, z);
+            translate(m, 0, 0, joint);
+            rotate(m, angle, axis.x(), axis.y(), axis.z());
+            translate(m, 0, 0, -joint);
+        }
+
+        /**
+         * Sets {@code m} to an eye at (x, y, z), a cone pointing forwards.
+         */
+        private static void eye(double[] m, double x, double y, double z) {
+            identity(m);
+            translate(m, x, y, z);
+            Vector axis = new Vector(Robot.EYE_DIR_X, Robot.EYE_DIR_Y, Robot.EYE_DIR_Z)
+                    .cross(Vector.Z);
+            rotate(m, -90, axis.x(), axis.y(), axis.z());
+            scale(m, Robot.EYE_BASE, Robot.EYE_BASE, Robot.EYE_HEIGHT);
+        }
+
+        /**
+         * Sets {@code m} to the identity.
+         */
+        private static void identity(double[] m) {
+            Arrays.fill(m, 0);
+            m[0] = m[5] = m[10] = m[15] = 1;
+        }
+
+        /**
+         * Multiplies {@code m} by a translation, like {@code glTranslated}.
+         */
+        private static void translate(double[] m, double x, double y, double z) {
+            for (int row = 0; row < 4; row++) {
+                m[12 + row] += m[row] * x + m[4 + row] * y + m[8 + row] * z;
+            }
+        }
+
+        /**
+         * Multiplies {@code m} by a scaling, like {@code glScaled}.
+         */
+        private static void scale(double[] m, double x, double y, double z) {
+            for (int row = 0; row < 4; row++) {
+                m[row] *= x;
+                m[4 + row] *= y;
+                m[8 + row] *= z;
+            }
+        }
+
+        /**
+         * Multiplies {@code m} by a rotation of {@code angle} degrees around
+         * (x, y, z), like {@code glRotated}.
+         */
+        private static void rotate(double[] m, double angle,
+                                   double x, double y, double z) {
+            double length = Math.sqrt(x * x + y * y + z * z);
+            x /= length;
+            y /= length;
+            z /= length;
+            double c = Math.cos(Math.toRadians(angle));
+            double s = Math.sin(Math.toRadians(angle));
+            // Columns of the rotation, as given for glRotate
+            double[] r = new double[] {
+                x * x * (1 - c) + c,     y * x * (1 - c) + z * s, x * z * (1 - c) - y * s,
+                x * y * (1 - c) - z * s, y * y * (1 - c) + c,     y * z * (1 - c) + x * s,
+                x * z * (1 - c) + y * s, y * z * (1 - c) - x * s, z * z * (1 - c) + c
+            };
+            double[] columns = Arrays.copyOf(m, 12);
+            for (int col = 0; col < 3; col++) {
+                for (int row = 0; row < 4; row++) {
+                    m[4 * col + row] = columns[row] * r[3 * col]
+                            + columns[4 + row] * r[3 * col + 1]
+                            + columns[8 + row] * r[3 * col + 2];
+                }
+            }
+        }
+
+        /**
+         * Stores {@code m} in the poses at {@code offset}.
+         */
+        private void store(double[] m, int offset) {
+            for (int i = 0; i < 16; i++) {
+                poses[offset + i] = (float) m[i];
+            }
+        }
+    }
+
+    /**
+     * Represents a Robot, to be implemented according to the Assignments.
+     *
+     * Robot design:
+     *
+     * (right) side (left or right, doesn't matter, except for the origin):
+     *
+     *  \   +   /
+     *  =========
+     *  =========
+     *  /       \
+     * *
+     *
+     * "/" and "\", leg or arm
+     * "=" torso
+     * "+" head
+     *
+     * "*" means the origin, which is on the front side of the robot
+     *
+     * Legs rotate from side to side, with an angle around 45 degrees. Under
+     * its legs, there are nano-sized rollers that will translate this
      * side-to-side motion to forward motion. From this, the robots gain one
      * large advantage: they get a great speed boost on curved parts of
      * the track.
@@ -609,27 +2193,7 @@ public class RobotRace extends Base {
      * we draw the robot in the negative x direction, from the origin thus,
      * the front of its front foot is parallel with the (local) y-axis.
      */
-    private class Robot {
-        
-        /** The identifier of this robot. In the range [0,3]. */
-        private int id;
-        
-        /** Distance that the robot travelled on the track.
-         * This distance is taken in the range [0,1).
-         */
-        private double distance = 0;
-        
-        /** Current speed of the robot in units/seconds. */
-        private double speed = 0;
-        
-        /** The last time the robot position was updated. */
-        private double lastATime = 0;
-        
-        /** The position this robot had when last updated. */
-        private Vector lastCalculatedPosition = null;
-        
-        /** The position tangent this robot had when last updated. */
-        private Vector lastCalculatedPositionTangent = null;
+    private class Robot extends RobotMotion {
 
         // the position of a body part is described as the front bottom
         // coordinate. Since the robot is mostly two-dimensional in starting
@@ -655,7 +2219,7 @@ public class RobotRace extends Base {
         public final static double TORSO_POS_Z = 0.3;
 
         public final static double TORSO_WIDTH = 0.2;
-        public final static double TORSO_DEPTH = 1.5;
+        public final static double TORSO_DEPTH = LENGTH;
         public final static double TORSO_HEIGHT = 0.4;
 
         // back leg pos (box)
@@ -678,7 +2242,7 @@ public class RobotRace extends Base {
         public final static double HEAD_POS_Y = 0.5;
         public final static double HEAD_POS_Z = 0.7;
 
-        public final static double HEAD_WIDTH = 0.4;
+        public final static double HEAD_WIDTH = WIDTH;
         public final static double HEAD_DEPTH = 0.3;
         public final static double HEAD_HEIGHT = 0.2;
 
@@ -701,106 +2265,163 @@ public class RobotRace extends Base {
         public final static double R_EYE_POS_Y = 0.5;
         public final static double R_EYE_POS_Z = 0.8;
 
+        // bounding sphere, around the middle of the robot. The corners of
+        // the head are about 0.9 away from the center, the rest leaves
+        // room for the limbs swinging 45 degrees
+        public final static double BOUNDS_CENTER_Y = -(B_LEG_POS_Y + LEG_DEPTH) / 2;
+        public final static double BOUNDS_CENTER_Z = (HEAD_POS_Z + HEAD_HEIGHT) / 2;
+        public final static double BOUNDS_RADIUS = 0.9 + ARM_HEIGHT / 2;
+
+        // levels of detail
+        public final static int LOD_FULL = 0;
+        public final static int LOD_MEDIUM = 1;
+        public final static int LOD_FAR = 2;
+
+        // offset in the walk cycle between robots, in cycles
+        public final static double WALK_PHASE_OFFSET = 0.25;
+
         /** The material from which this robot is built. */
         private final Material material;
 
+        /** The level of detail at which this robot is drawn. */
+        private int levelOfDetail = LOD_FULL;
+
+        /** Offset of this robot in the walk cycle, in cycles. */
+        private final double phase;
+
+        /** Matrices of the body parts in the current pose. */
+        private final float[] palette = new float[PoseTable.PALETTE_SIZE];
+
+        /** Model view matrix of a body part. */
+        private final float[] partModelView = new float[16];
+
         /**
          * Constructs the robot with initial parameters.
          */
         public Robot(int id, Material material) {
-            this.id = id;
+            super(id, raceTrack);
             this.material = material;
+            // Spread the robots over the cycle, so they do not walk in step
+            phase = id * WALK_PHASE_OFFSET;
         }
         
         /**
-         * Returns the last calculated position of this robot.
+         * Returns the views whose frustum the bounding sphere of this
+         * robot, at the given position and tangent, intersects, as bits.
          */
-        public Vector getLastCalculatedPosition() {
-            return lastCalculatedPosition;
+        public int getVisibleViews(double x, double y, double z,
+                                   double tangentX, double tangentY) {
+            // the sphere center lies backwards along the tangent
+            double scale = BOUNDS_CENTER_Y / Math.sqrt(tangentX * tangentX
+                    + tangentY * tangentY);
+            double centerX = x + tangentX * scale;
+            double centerY = y + tangentY * scale;
+            double centerZ = z + BOUNDS_CENTER_Z;
+            int views = 0;
+            for (int view = 0; view < viewCount; view++) {
+                if (viewFrusta[view].isSphereVisible(centerX, centerY, centerZ,
+                                                     BOUNDS_RADIUS)) {
+                    views |= 1 << view;
+                }
+            }
+            return views;
         }
-        
+
         /**
-         * Returns the last calculated position tangent of this robot.
+         * Selects the level of detail for the given distance to the camera.
+         *
+         * A level only changes once the distance has passed its threshold
+         * by {@code LOD_HYSTERESIS}, so a robot near a threshold does not
+         * switch back and forth.
          */
-        public Vector getLastCalculatedPositionTangent() {
-            return lastCalculatedPositionTangent;
+        public void selectLevelOfDetail(double cameraDistance) {
+            while (levelOfDetail < LOD_FAR
+                    && cameraDistance > getLevelThreshold(levelOfDetail + 1) * (1 + LOD_HYSTERESIS)) {
+                levelOfDetail++;
+            }
+            while (levelOfDetail > LOD_FULL
+                    && cameraDistance < getLevelThreshold(levelOfDetail) * (1 - LOD_HYSTERESIS)) {
+                levelOfDetail--;
+            }
         }
-        
-        /**
-         * Calculate the new position of this robot.
-         * 
-         * @param aTime Time for animation and movement, in seconds
-         */
-        public void updatePosition(float aTime) {
-            distance += (aTime-lastATime)*speed; // Increment the distance by the time passed times the speed
-            distance = distance-Math.floor(distance); // Make sure the distance is still in the range [0,1)
-            lastATime = aTime; // Update the last aTime
-            lastCalculatedPosition = raceTrack.getPointOnCurrentCurve(distance, id+0.5); // update the position Vector object
-            lastCalculatedPositionTangent = raceTrack.getTangentOnCurrentCurve(distance);
 
-            // TODO: remove this
-            //if (id == 0) {
-                //lastCalculatedPosition = Vector.O;
-            //}
-        }
-        
         /**
-         * Returns the new position of this robot.
-         * 
-         * @param aTime Time for animation and movement, in seconds
+         * Returns the camera distance from which {@code level} is used.
          */
-        public Vector getPosition(float aTime) {
-            updatePosition(aTime);
-            return lastCalculatedPosition;
+        private double getLevelThreshold(int level) {
+            return lodScale * ((LOD_FAR == level) ? LOD_FAR_DISTANCE : LOD_MEDIUM_DISTANCE);
         }
-        
+
         /**
-         * Returns the new position tangent of this robot.
-         * 
-         * @param aTime Time for animation and movement, in seconds
+         * Returns the level of detail at which this robot is drawn.
          */
-        public Vector getPositionTangent(float aTime) {
-            updatePosition(aTime);
-            return lastCalculatedPositionTangent;
+        public int getLevelOfDetail() {
+            return levelOfDetail;
         }
 
         /**
-         * Get the head position.
-         *
-         * @return Head position.
+         * Returns the material from which this robot is built.
          */
-        public Vector getHeadPosition(float aTime) {
-            Vector position = getPosition(aTime);
-            return position.add(new Vector(0, 0, HEAD_POS_Z + HEAD_HEIGHT / 2));
+        public Material getMaterial() {
+            return material;
         }
-        
+
         /**
-         * Changes the speed of this robot.
-         * 
+         * Looks up the pose of this robot at {@code aTime}, once per
+         * frame for all views that show it.
+         *
          * @param aTime Time for animation and movement, in seconds
          */
-        
-        public void setSpeed(double speed, float aTime) {
-            updatePosition(aTime); // update the position with the old speed
-            this.speed = speed; // update the speed
+        public void setPose(double aTime) {
+            if (LOD_FULL == levelOfDetail) {
+                poseTable.getPalette(aTime * ANIMATION_SPEED / (2 * Math.PI) + phase,
+                                     palette);
+            }
         }
 
         /**
-         * Draws this robot (as a {@code stickfigure} if specified).
+         * Draws this robot (as a {@code stickfigure} if specified), at its
+         * selected level of detail, in the pose set by {@link #setPose}.
          *
-         * @param aTime Time for animation and movement, in seconds
+         * The body parts are placed by loading their model view matrix,
+         * the product of {@code modelView} and their matrix in the current
+         * pose, so drawing a robot does not touch the matrix stack.
+         *
+         * @param modelView Model view matrix of the robot, column-major
          */
-        public void draw(boolean stickFigure, float aTime) {
-            
+        public void draw(boolean stickFigure, float[] modelView) {
+            gl.glLoadMatrixf(modelView, 0);
+            if (LOD_FAR == levelOfDetail) {
+                frameStats.robotsFarDetail++;
+                drawFar(stickFigure);
+                return;
+            }
+            if (LOD_MEDIUM == levelOfDetail) {
+                frameStats.robotsMediumDetail++;
+                drawMedium(stickFigure);
+                return;
+            }
+
             // set the correct material properties
             material.setSurfaceColor(gl);
 
-            // front leg
-            gl.glPushMatrix();
-            gl.glTranslated(0, -(LEG_DEPTH / 2), LEG_HEIGHT / 2);
-            rotateBodyPart(aTime, Vector.Y, 0.15);
-            drawBox(LEG_WIDTH, LEG_DEPTH, LEG_HEIGHT, stickFigure);
-            gl.glPopMatrix();
+            for (int part = 0; part < PoseTable.PARTS; part++) {
+                PoseTable.multiply(modelView, palette, 16 * part, partModelView);
+                gl.glLoadMatrixf(partModelView, 0);
+                if (PoseTable.LEFT_EYE == part || PoseTable.RIGHT_EYE == part) {
+                    primitives.drawCone(EYE_SLICES, EYE_STACKS, stickFigure);
+                } else {
+                    primitives.drawCube(stickFigure);
+                }
+            }
+        }
+
+        /**
+         * Draws this robot at medium detail: the torso and head, and the
+         * legs and arms merged into a box at the front and the back,
+         * without eyes and without animation.
+         */
+        private void drawMedium(boolean stickFigure) {
 
             // set the correct material properties
             material.setSurfaceColor(gl);
@@ -813,144 +2434,1462 @@ public class RobotRace extends Base {
             drawBox(TORSO_WIDTH, TORSO_DEPTH, TORSO_HEIGHT, stickFigure);
             gl.glPopMatrix();
 
-            // set the correct material properties
-            material.setSurfaceColor(gl);
+            // head
+            gl.glPushMatrix();
+            gl.glTranslated(HEAD_POS_X,
+                            -(HEAD_POS_Y + HEAD_DEPTH / 2),
+                            HEAD_POS_Z + HEAD_HEIGHT / 2);
+            drawBox(HEAD_WIDTH, HEAD_DEPTH, HEAD_HEIGHT, stickFigure);
+            gl.glPopMatrix();
+
+            // front leg and arm
+            gl.glPushMatrix();
+            gl.glTranslated(0,
+                            -(LEG_DEPTH / 2),
+                            (F_ARM_POS_Z + ARM_HEIGHT) / 2);
+            drawBox(LEG_WIDTH, LEG_DEPTH, F_ARM_POS_Z + ARM_HEIGHT, stickFigure);
+            gl.glPopMatrix();
 
-            // back leg
+            // back leg and arm
             gl.glPushMatrix();
             gl.glTranslated(B_LEG_POS_X,
                             -(B_LEG_POS_Y + LEG_DEPTH / 2),
-                            B_LEG_POS_Z + LEG_HEIGHT / 2);
-            rotateBodyPart(aTime * -1, Vector.Y, 0.15);
-            drawBox(LEG_WIDTH, LEG_DEPTH, LEG_HEIGHT, stickFigure);
+                            (B_ARM_POS_Z + ARM_HEIGHT) / 2);
+            drawBox(LEG_WIDTH, LEG_DEPTH, B_ARM_POS_Z + ARM_HEIGHT, stickFigure);
             gl.glPopMatrix();
+        }
+
+        /**
+         * Draws this robot at far detail, as a single box around its
+         * torso and head.
+         */
+        private void drawFar(boolean stickFigure) {
 
             // set the correct material properties
             material.setSurfaceColor(gl);
 
-            // front arm
             gl.glPushMatrix();
-            gl.glTranslated(F_ARM_POS_X,
-                            -(F_ARM_POS_Y + ARM_DEPTH / 2),
-                            F_ARM_POS_Z + ARM_HEIGHT / 2);
-            rotateBodyPart(aTime * -1, Vector.X, -0.15);
-            drawBox(ARM_WIDTH, ARM_DEPTH, ARM_HEIGHT, stickFigure);
+            gl.glTranslated(0,
+                            -(B_LEG_POS_Y + LEG_DEPTH) / 2,
+                            (HEAD_POS_Z + HEAD_HEIGHT) / 2);
+            drawBox(TORSO_WIDTH,
+                    B_LEG_POS_Y + LEG_DEPTH,
+                    HEAD_POS_Z + HEAD_HEIGHT,
+                    stickFigure);
             gl.glPopMatrix();
+        }
+    }
 
-            // set the correct material properties
-            material.setSurfaceColor(gl);
+    /**
+     * State of all robots after a simulation tick.
+     *
+     * Snapshots are preallocated and recycled by a {@link TripleBuffer}:
+     * the simulation only writes a snapshot before publishing it, and the
+     * rendering only reads it after picking it up, so a published
+     * snapshot is effectively immutable.
+     */
+    private static class RaceSnapshot {
 
-            // back arm
-            gl.glPushMatrix();
-            gl.glTranslated(B_ARM_POS_X,
-                            -(B_ARM_POS_Y + ARM_DEPTH / 2),
-                            B_ARM_POS_Z + ARM_HEIGHT / 2);
-            rotateBodyPart(aTime, Vector.X, -0.15);
-            drawBox(ARM_WIDTH, ARM_DEPTH, ARM_HEIGHT, stickFigure);
-            gl.glPopMatrix();
+        /** The simulation tick of this snapshot, or -1 if never written. */
+        public long tick = -1;
 
-            // set the correct material properties
-            material.setSurfaceColor(gl);
+        /** Simulation time of this snapshot, in seconds. */
+        public double aTime;
 
-            // head
-            gl.glPushMatrix();
-            gl.glTranslated(HEAD_POS_X,
-                            -(HEAD_POS_Y + HEAD_DEPTH / 2),
-                            HEAD_POS_Z + HEAD_HEIGHT / 2);
-            drawBox(HEAD_WIDTH, HEAD_DEPTH, HEAD_HEIGHT, stickFigure);
-            gl.glPopMatrix();
+        /** Simulation time of this snapshot, in nanoseconds of the simulation clock. */
+        public long clockNanos;
 
-            // set the correct material properties
-            material.setSurfaceColor(gl);
+        /** Track on which the robots raced. */
+        public int trackNr;
 
-            // left eye
-            gl.glPushMatrix();
-            gl.glTranslated(L_EYE_POS_X,
-                            -(L_EYE_POS_Y),
-                            L_EYE_POS_Z);
-            drawCone(new Vector(EYE_DIR_X, EYE_DIR_Y, EYE_DIR_Z),
-                     EYE_BASE, EYE_HEIGHT, EYE_SLICES, EYE_STACKS, stickFigure);
-            gl.glPopMatrix();
+        /** Distance of each robot on the track, in the range [0,1). */
+        public final double[] distance;
 
-            // set the correct material properties
-            material.setSurfaceColor(gl);
+        /** Total distance travelled by each robot. */
+        public final double[] totalDistance;
 
-            // right eye
-            gl.glPushMatrix();
-            gl.glTranslated(R_EYE_POS_X,
-                            -(R_EYE_POS_Y),
-                            R_EYE_POS_Z);
-            drawCone(new Vector(EYE_DIR_X, EYE_DIR_Y, EYE_DIR_Z),
-                     EYE_BASE, EYE_HEIGHT, EYE_SLICES, EYE_STACKS, stickFigure);
-            gl.glPopMatrix();
-            
+        /** Position of each robot. */
+        public final double[] x, y, z;
+
+        /** Tangent of the track at each robot. */
+        public final double[] tangentX, tangentY, tangentZ;
+
+        /** Rotation of each robot around the z-axis, in radians. */
+        public final double[] heading;
+
+        /** Robot that the camera follows. */
+        public int cameraRobot;
+
+        /** Camera mode that the auto mode shows. */
+        public int cameraMode;
+
+        /**
+         * Constructs a snapshot for {@code n} robots.
+         */
+        public RaceSnapshot(int n) {
+            distance = new double[n];
+            totalDistance = new double[n];
+            x = new double[n];
+            y = new double[n];
+            z = new double[n];
+            tangentX = new double[n];
+            tangentY = new double[n];
+            tangentZ = new double[n];
+            heading = new double[n];
+        }
+
+        /**
+         * Makes this snapshot a copy of {@code that}.
+         */
+        public void copyFrom(RaceSnapshot that) {
+            tick = that.tick;
+            aTime = that.aTime;
+            clockNanos = that.clockNanos;
+            trackNr = that.trackNr;
+            cameraRobot = that.cameraRobot;
+            cameraMode = that.cameraMode;
+            int n = distance.length;
+            System.arraycopy(that.distance, 0, distance, 0, n);
+            System.arraycopy(that.totalDistance, 0, totalDistance, 0, n);
+            System.arraycopy(that.x, 0, x, 0, n);
+            System.arraycopy(that.y, 0, y, 0, n);
+            System.arraycopy(that.z, 0, z, 0, n);
+            System.arraycopy(that.tangentX, 0, tangentX, 0, n);
+            System.arraycopy(that.tangentY, 0, tangentY, 0, n);
+            System.arraycopy(that.tangentZ, 0, tangentZ, 0, n);
+            System.arraycopy(that.heading, 0, heading, 0, n);
+        }
+
+        /**
+         * Makes this snapshot the interpolation between {@code from} and
+         * {@code to} at {@code alpha} in the range [0,1].
+         */
+        public void interpolate(RaceSnapshot from, RaceSnapshot to, double alpha) {
+            tick = to.tick;
+            aTime = from.aTime + alpha * (to.aTime - from.aTime);
+            clockNanos = to.clockNanos;
+            trackNr = to.trackNr;
+            cameraRobot = to.cameraRobot;
+            cameraMode = to.cameraMode;
+            for (int i = 0; i < distance.length; i++) {
+                // the distance may have wrapped around the start line
+                double delta = to.distance[i] - from.distance[i];
+                if (delta < -0.5) {
+                    delta += 1;
+                }
+                distance[i] = from.distance[i] + alpha * delta;
+                distance[i] -= Math.floor(distance[i]);
+                totalDistance[i] = lerp(from.totalDistance[i], to.totalDistance[i], alpha);
+                x[i] = lerp(from.x[i], to.x[i], alpha);
+                y[i] = lerp(from.y[i], to.y[i], alpha);
+                z[i] = lerp(from.z[i], to.z[i], alpha);
+                tangentX[i] = lerp(from.tangentX[i], to.tangentX[i], alpha);
+                tangentY[i] = lerp(from.tangentY[i], to.tangentY[i], alpha);
+                tangentZ[i] = lerp(from.tangentZ[i], to.tangentZ[i], alpha);
+                // turn along the shortest arc
+                double turn = to.heading[i] - from.heading[i];
+                if (turn > Math.PI) {
+                    turn -= 2 * Math.PI;
+                } else if (turn < -Math.PI) {
+                    turn += 2 * Math.PI;
+                }
+                heading[i] = from.heading[i] + alpha * turn;
+            }
+        }
+
+        /**
+         * Linear interpolation between {@code a} and {@code b}.
+         */
+        private static double lerp(double a, double b, double alpha) {
+            return a + alpha * (b - a);
+        }
+
+        /**
+         * Returns the position of robot {@code i}.
+         */
+        public Vector getPosition(int i) {
+            return new Vector(x[i], y[i], z[i]);
+        }
+
+        /**
+         * Returns the tangent of the track at robot {@code i}.
+         */
+        public Vector getTangent(int i) {
+            return new Vector(tangentX[i], tangentY[i], tangentZ[i]);
         }
     }
 
     /**
-     * Implementation of a camera with a position and orientation.
+     * Lock-free triple buffer, handing values over from a single producer
+     * to a single consumer.
+     *
+     * The producer always owns a back buffer and the consumer a front
+     * buffer; the third buffer sits in the middle. Publishing swaps the
+     * back buffer with the middle one and marks it fresh, and picking up
+     * swaps the front buffer with the middle one if it is fresh. Neither
+     * side ever waits, and the consumer always gets the latest complete
+     * value.
      */
-    private class Camera {
+    private static class TripleBuffer<T> {
 
-        /** The position of the camera. */
-        public Vector eye = new Vector(3f, 6f, 5f);
+        /** Flag in the state marking that the middle buffer is fresh. */
+        private final static int FRESH = 4;
 
-        /** The point to which the camera is looking. */
-        public Vector center = Vector.O;
+        /** The three buffers. */
+        private final T[] buffers;
 
-        /** The up vector. */
-        public Vector up = Vector.Z;
+        /** Index of the middle buffer, with the FRESH flag. */
+        private final AtomicInteger middle = new AtomicInteger(1);
+
+        /** Index of the buffer owned by the producer. */
+        private int back = 0;
+
+        /** Index of the buffer owned by the consumer. */
+        private int front = 2;
 
         /**
-         * Robot to show in Helicopter and MotorCycle modes.
+         * Constructs a triple buffer over the three given buffers.
          */
-        public int robotNum;
+        public TripleBuffer(T[] buffers) {
+            this.buffers = buffers;
+        }
 
         /**
-         * Last time.
+         * Returns the buffer the producer may write to.
          */
-        private int lastTime = 0;
+        public T getBack() {
+            return buffers[back];
+        }
 
         /**
-         * Last robot change time.
+         * Publishes the back buffer; the producer gets a new back buffer.
          */
-        private int lastRobotTime = 0;
+        public void publish() {
+            back = middle.getAndSet(back | FRESH) & ~FRESH;
+        }
 
         /**
-         * Mode.
+         * Returns the latest published buffer, which the consumer owns
+         * until the next call.
          */
-        private int mode = 0;
+        public T getFront() {
+            if ((middle.get() & FRESH) != 0) {
+                front = middle.getAndSet(front) & ~FRESH;
+            }
+            return buffers[front];
+        }
+    }
+
+    /**
+     * Wait-free queue of input events, handed over from a single producer
+     * (the AWT event thread) to a single consumer (the render thread).
+     *
+     * The events live in a ring of parallel arrays. The producer only
+     * writes the slot at the tail and then advances the tail, the consumer
+     * only reads the slot at the head and then advances the head, so
+     * neither side ever waits for the other. An event that does not fit
+     * in a full ring is dropped.
+     */
+    private static class InputQueue {
+
+        // kinds of events
+        public final static int ORBIT = 0;
+        public final static int WIDEN = 1;
+        public final static int ZOOM = 2;
+        public final static int KEY = 3;
+        public final static int PICK = 4;
+        public final static int GRAB = 5;
+        public final static int DRAG = 6;
+        public final static int RELEASE = 7;
+
+        /** Number of slots in the ring, a power of two. */
+        public final static int CAPACITY = 256;
+
+        /** Kind of the event in each slot. */
+        private final int[] kinds = new int[CAPACITY];
+
+        /** First and second argument of the event in each slot. */
+        private final float[] xs = new float[CAPACITY];
+        private final float[] ys = new float[CAPACITY];
+
+        /** Number of events taken by the consumer. */
+        private final AtomicInteger head = new AtomicInteger();
+
+        /** Number of events offered by the producer. */
+        private final AtomicInteger tail = new AtomicInteger();
+
+        /** Number of events dropped because the ring was full. */
+        private volatile int dropped;
 
         /**
-         * Updates the camera viewpoint and direction based on the
-         * selected camera mode.
-         *
-         * For the camera mode, we periodically switch all robots for
-         * the helicopter, motor cycle and first person mode. 
+         * Offers an event; called by the producer only. Returns false if
+         * the ring is full and the event was dropped.
          */
-        public void update(int mode) {
-            setRobotNum();
-            // Helicopter mode
-            if (1 == mode) {
-                setHelicopterMode();
+        public boolean offer(int kind, float x, float y) {
+            int t = tail.get();
+            if (t - head.get() == CAPACITY) {
+                dropped++;
+                return false;
+            }
+            int slot = t & (CAPACITY - 1);
+            kinds[slot] = kind;
+            xs[slot] = x;
+            ys[slot] = y;
+            // Publish the slot after it is written
+            tail.lazySet(t + 1);
+            return true;
+        }
 
-            // Motor cycle mode
-            } else if (2 == mode) {
-                setMotorCycleMode();
+        /**
+         * Returns whether there is no event to take; called by the
+         * consumer only.
+         */
+        public boolean isEmpty() {
+            return head.get() == tail.get();
+        }
 
-            // First person mode
-            } else if (3 == mode) {
-                setFirstPersonMode();
+        /**
+         * Returns the kind of the event at the head.
+         */
+        public int getKind() {
+            return kinds[head.get() & (CAPACITY - 1)];
+        }
 
-            // Auto mode
+        /**
+         * Returns the first argument of the event at the head.
+         */
+        public float getX() {
+            return xs[head.get() & (CAPACITY - 1)];
+        }
+
+        /**
+         * Returns the second argument of the event at the head.
+         */
+        public float getY() {
+            return ys[head.get() & (CAPACITY - 1)];
+        }
+
+        /**
+         * Removes the event at the head; its slot goes back to the
+         * producer.
+         */
+        public void remove() {
+            head.lazySet(head.get() + 1);
+        }
+
+        /**
+         * Returns the number of events dropped so far.
+         */
+        public int getDropped() {
+            return dropped;
+        }
+    }
+
+    /**
+     * Interpolates between the two most recent simulation ticks, so that
+     * robots move smoothly at the display rate while the simulation runs
+     * at a lower tick rate.
+     *
+     * The rendering lags one tick behind the simulation: a frame drawn
+     * right after a tick was published shows the previous tick, and a
+     * frame drawn a full tick later shows the latest one.
+     */
+    private static class SnapshotInterpolator {
+
+        /** Copies of the two most recent ticks. */
+        private final RaceSnapshot previous, latest;
+
+        /** The interpolated snapshot for the current frame. */
+        private final RaceSnapshot interpolated;
+
+        /** Duration of a simulation tick, in nanoseconds. */
+        private final long tickNanos;
+
+        /**
+         * Constructs an interpolator for {@code n} robots and the given
+         * duration of a tick.
+         */
+        public SnapshotInterpolator(int n, long tickNanos) {
+            previous = new RaceSnapshot(n);
+            latest = new RaceSnapshot(n);
+            interpolated = new RaceSnapshot(n);
+            this.tickNanos = tickNanos;
+        }
+
+        /**
+         * Takes in the latest published snapshot, and returns the
+         * interpolated snapshot at {@code clockNanos} of the simulation
+         * clock.
+         */
+        public RaceSnapshot update(RaceSnapshot published, long clockNanos) {
+            if (published.tick != latest.tick) {
+                // the first snapshot, or a tick after a long stall, has
+                // nothing to interpolate from
+                previous.copyFrom(published.tick == latest.tick + 1 ? latest : published);
+                latest.copyFrom(published);
+            }
+            double alpha = (clockNanos - latest.clockNanos) / (double) tickNanos;
+            alpha = Math.max(0, Math.min(1, alpha));
+            if (previous.trackNr != latest.trackNr) {
+                // do not slide the robots across the terrain to a new track
+                alpha = 1;
+            }
+            interpolated.interpolate(previous, latest, alpha);
+            return interpolated;
+        }
+    }
+
+    /**
+     * Simulation of the race, running on its own thread at a fixed tick
+     * rate.
+     *
+     * Every tick advances the {@link Race}, and publishes a snapshot of
+     * the robots.
+     * The rendering picks up the latest snapshot at the start of each
+     * frame, so the cost of the simulation no longer adds to the frame
+     * time.
+     */
+    private class RaceSimulation implements Runnable, RaceStreamListener {
+
+        /**
+         * Number of simulation ticks per second. The rendering interpolates
+         * between ticks, so this can be well below the display rate.
+         */
+        public final static int TICK_RATE = Race.TICK_RATE;
+
+        /** Snapshots handed over to the rendering. */
+        private final TripleBuffer<RaceSnapshot> snapshots;
+
+        /** Number of ticks simulated so far. */
+        private long tick = 0;
+
+        /** Whether the simulation thread should keep running. */
+        private volatile boolean running = true;
+
+        /** Whether the final results of the race were printed. */
+        private boolean resultsReported = false;
+
+        /** Robot that the camera follows. */
+        private int cameraRobot = 0;
+
+        /** Camera mode that the auto mode shows. */
+        private int cameraMode = 0;
+
+        /**
+         * Constructs the simulation of the robots.
+         */
+        public RaceSimulation() {
+            snapshots = new TripleBuffer<RaceSnapshot>(new RaceSnapshot[] {
+                new RaceSnapshot(robots.length),
+                new RaceSnapshot(robots.length),
+                new RaceSnapshot(robots.length)
+            });
+
+            // Switch the robot and mode of the camera now and then
+            final TimerWheel timers = race.getTimers();
+            timers.schedule(timers.createTimer(new TimerListener() {
+                @Override
+                public void expire(int timer, long tick) {
+                    cameraRobot = rand.nextInt(robots.length);
+                    timers.schedule(timer, tick + CAMERA_ROBOT_INTERVAL * TICK_RATE);
+                }
+            }), CAMERA_ROBOT_INTERVAL * TICK_RATE);
+            timers.schedule(timers.createTimer(new TimerListener() {
+                @Override
+                public void expire(int timer, long tick) {
+                    cameraMode = rand.nextInt(4);
+                    timers.schedule(timer, tick + CAMERA_MODE_INTERVAL * TICK_RATE);
+                }
+            }), CAMERA_MODE_INTERVAL * TICK_RATE);
+        }
+
+        /**
+         * Simulates the first tick, so a snapshot is available at once,
+         * and starts the simulation thread, or subscribes to the race
+         * broadcast at {@link #streamAddress} if there is one.
+         */
+        public void start() {
+            step();
+            if (null != streamAddress) {
+                new RaceStreamClient(streamAddress, this).start();
+                return;
+            }
+            Thread thread = new Thread(this, "RaceSimulation");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Stops the simulation thread after its current tick.
+         */
+        public void stop() {
+            running = false;
+        }
+
+        /**
+         * Returns the duration of a tick, in nanoseconds.
+         */
+        public long getTickNanos() {
+            return 1000000000L / TICK_RATE;
+        }
+
+        /**
+         * Returns the latest complete snapshot.
+         */
+        public RaceSnapshot getLatestSnapshot() {
+            return snapshots.getFront();
+        }
+
+        /**
+         * Runs a tick whenever the simulation clock reaches it. When the
+         * simulation falls more than a second behind, it holds the clock
+         * back instead of trying to catch up.
+         */
+        @Override
+        public void run() {
+            long tickNanos = getTickNanos();
+            while (running) {
+                // sleep at most a tick, to notice changes of the clock
+                long wait = Math.min(clock.getSystemNanosUntil(tick * tickNanos), tickNanos);
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    continue;
+                }
+                if (clock.getNanos() - tick * tickNanos > TICK_RATE * tickNanos) {
+                    clock.setNanos(tick * tickNanos);
+                }
+                step();
+            }
+        }
+
+        /**
+         * Simulates a single tick and publishes its snapshot.
+         */
+        private void step() {
+            double aTime = tick / (double) TICK_RATE;
+            int trackNr = gs.trackNr;
+
+            // The track may be edited from the rendering
+            synchronized (raceTrack) {
+                race.setTrackNr(trackNr);
+                race.step(aTime);
+            }
+            RankingEngine ranking = race.getRanking();
+            if (ranking.isFinished() && !resultsReported) {
+                StringBuilder results = new StringBuilder(String.format(
+                        "Race finished after %.2fs:", ranking.getFinishTime(
+                        ranking.getRobotAtFinish(robots.length - 1))));
+                for (int position = 0; position < Math.min(RESULTS_SHOWN, robots.length); position++) {
+                    int robot = ranking.getRobotAtFinish(position);
+                    results.append(String.format("  %d. robot %d %.2fs",
+                            position + 1, robot, ranking.getFinishTime(robot)));
+                }
+                status.show(results.toString(), RESULTS_SECONDS);
+                resultsReported = true;
+            }
+
+            publish(aTime, trackNr);
+        }
+
+        /**
+         * Places the robots as broadcast by the server for {@code tick},
+         * and publishes its snapshot. The camera still picks its robot
+         * and mode locally.
+         */
+        @Override
+        public void receive(long tick, int trackNr, double[] totalDistance) {
+            long tickNanos = getTickNanos();
+            synchronized (raceTrack) {
+                for (int i = 0; i < Math.min(robots.length, totalDistance.length); i++) {
+                    robots[i].moveTo(totalDistance[i], trackNr);
+                }
+            }
+            race.getTimers().advance(tick);
+
+            // follow the clock of the server, so the rendering interpolates
+            // between the ticks as they arrive
+            if (Math.abs(clock.getNanos() - tick * tickNanos) > tickNanos) {
+                clock.setNanos(tick * tickNanos);
+            }
+            this.tick = tick;
+            publish(tick / (double) TICK_RATE, trackNr);
+        }
+
+        /**
+         * Publishes the snapshot of the robots at the current tick.
+         */
+        private void publish(double aTime, int trackNr) {
+            RaceSnapshot next = snapshots.getBack();
+            next.tick = tick;
+            next.aTime = aTime;
+            next.trackNr = trackNr;
+            next.cameraRobot = cameraRobot;
+            next.cameraMode = cameraMode;
+            for (int i = 0; i < robots.length; i++) {
+                Robot robot = robots[i];
+                Vector position = robot.getLastCalculatedPosition();
+                Vector tangent = robot.getLastCalculatedPositionTangent();
+                next.distance[i] = robot.getDistance();
+                next.totalDistance[i] = robot.getTotalDistance();
+                next.x[i] = position.x();
+                next.y[i] = position.y();
+                next.z[i] = position.z();
+                next.tangentX[i] = tangent.x();
+                next.tangentY[i] = tangent.y();
+                next.tangentZ[i] = tangent.z();
+                next.heading[i] = Math.atan2(-tangent.x(), tangent.y());
+            }
+
+            next.clockNanos = tick * getTickNanos();
+            snapshots.publish();
+            tick++;
+        }
+    }
+
+    /**
+     * The kind of window that the scene is rendered into.
+     */
+    private interface WindowBackend {
+
+        /**
+         * Returns the name of the backend, as used by the robotrace.backend
+         * property.
+         */
+        String getName();
+
+        /**
+         * Puts the backend in place of {@code drawable}, the panel of the
+         * base class, and returns the drawable to render from now on.
+         * Called on the AWT event thread, while nothing renders.
+         */
+        GLAutoDrawable attach(GLAutoDrawable drawable);
+    }
+
+    /**
+     * The Swing panel of the base class. It renders offscreen and copies
+     * every frame back into the Swing back buffer, which mixes well with
+     * other Swing components but costs a readback per frame.
+     */
+    private static class PanelBackend implements WindowBackend {
+
+        @Override
+        public String getName() {
+            return "panel";
+        }
+
+        @Override
+        public GLAutoDrawable attach(GLAutoDrawable drawable) {
+            return drawable;
+        }
+    }
+
+    /**
+     * A heavyweight canvas, which renders directly into its window and
+     * swaps its own buffers, without a readback. It takes the place of the
+     * panel in the main frame, and takes over its OpenGL and input
+     * listeners.
+     */
+    private class CanvasBackend implements WindowBackend {
+
+        @Override
+        public String getName() {
+            return "canvas";
+        }
+
+        @Override
+        public GLAutoDrawable attach(GLAutoDrawable drawable) {
+            Component panel = (Component) drawable;
+            Container parent = panel.getParent();
+            GLCanvas canvas = new GLCanvas(drawable.getChosenGLCapabilities());
+
+            // Removing the panel destroys its context; the listeners are
+            // disposed first, so the GPU resources are forgotten
+            Object constraints = BorderLayout.CENTER;
+            if (parent.getLayout() instanceof BorderLayout) {
+                constraints = ((BorderLayout) parent.getLayout()).getConstraints(panel);
+            }
+            parent.remove(panel);
+
+            // The listeners are initialized again on the new context
+            while (drawable.getGLEventListenerCount() > 0) {
+                canvas.addGLEventListener(
+                        drawable.removeGLEventListener(drawable.getGLEventListener(0)));
+            }
+            for (MouseListener listener : panel.getMouseListeners()) {
+                if (listener instanceof InputListener) {
+                    InputListener input = (InputListener) listener;
+                    canvas.addMouseListener(input);
+                    canvas.addMouseMotionListener(input);
+                    canvas.addMouseWheelListener(input);
+                    canvas.addKeyListener(input);
+                }
+            }
+            canvas.setFocusable(true);
+
+            // Keep the popups of the tool bar above the heavyweight canvas
+            for (Frame frame : Frame.getFrames()) {
+                disableLightWeightPopups(frame);
+            }
+
+            parent.add(canvas, constraints);
+            parent.validate();
+            canvas.requestFocusInWindow();
+            return canvas;
+        }
+
+        /**
+         * Makes the combo boxes in {@code component} and its descendants
+         * show their popups in heavyweight windows.
+         */
+        private void disableLightWeightPopups(Component component) {
+            if (component instanceof JComboBox) {
+                ((JComboBox) component).setLightWeightPopupEnabled(false);
+            }
+            if (component instanceof Container) {
+                for (Component child : ((Container) component).getComponents()) {
+                    disableLightWeightPopups(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drives the rendering in place of the fixed rate {@code FPSAnimator}
+     * that the base class starts.
+     *
+     * Modes:
+     * - FIXED: render at a fixed number of frames per second;
+     * - FAST: render as fast as possible, without vertical sync;
+     * - VSYNC: render as fast as the vertical sync allows;
+     * - ADAPTIVE: render at the target frame time, and lower the quality
+     *   when the frames take too long, or raise it when there is room.
+     */
+    private class FrameScheduler implements Runnable {
+
+        // modes
+        public final static int FIXED = 0;
+        public final static int FAST = 1;
+        public final static int VSYNC = 2;
+        public final static int ADAPTIVE = 3;
+
+        /** Lowest quality level. */
+        public final static int MIN_QUALITY = 0;
+
+        /** Highest quality level. */
+        public final static int MAX_QUALITY = 3;
+
+        /** Fraction of the target frame time above which a frame is slow. */
+        private final static double SLOW_FRACTION = 0.9;
+
+        /** Fraction of the target frame time below which a frame is fast. */
+        private final static double FAST_FRACTION = 0.5;
+
+        /** Number of consecutive slow frames before lowering the quality. */
+        private final static int SLOW_FRAMES = 15;
+
+        /** Number of consecutive fast frames before raising the quality. */
+        private final static int FAST_FRAMES = 120;
+
+        /** The drawable to render; replaced when the backend is attached. */
+        private GLAutoDrawable drawable;
+
+        /** The kind of window that is rendered into. */
+        private final WindowBackend backend;
+
+        /** The active mode. */
+        private final int mode;
+
+        /** Target duration of a frame, in nanoseconds. */
+        private final long targetNanos;
+
+        /** Smoothed duration of rendering a frame, in nanoseconds. */
+        private volatile double frameNanos = 0;
+
+        /** The quality level, from MIN_QUALITY to MAX_QUALITY. */
+        private volatile int quality = MAX_QUALITY;
+
+        /** Number of consecutive slow and fast frames. */
+        private int slowFrames = 0, fastFrames = 0;
+
+        /** Whether the swap interval still has to be set on the GL thread. */
+        private volatile boolean swapIntervalPending = true;
+
+        /** Whether frames are rendered; cleared by stop(). */
+        private volatile boolean running = true;
+
+        /** Whether the backend is replacing the drawable. */
+        private volatile boolean attaching = false;
+
+        /**
+         * Constructs a scheduler for {@code drawable}, in the given mode and
+         * with the given target number of frames per second.
+         */
+        public FrameScheduler(GLAutoDrawable drawable, WindowBackend backend,
+                              int mode, int fps) {
+            this.drawable = drawable;
+            this.backend = backend;
+            this.mode = mode;
+            this.targetNanos = 1000000000L / fps;
+        }
+
+        /**
+         * Stops the animator of the drawable, attaches the backend, and
+         * starts rendering from a thread of our own. Closing the window
+         * stops the rendering, as it does the animator.
+         */
+        public void start() {
+            final GLAnimatorControl animator = drawable.getAnimator();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (null != animator) {
+                        animator.stop();
+                        animator.remove(drawable);
+                    }
+                    try {
+                        SwingUtilities.invokeAndWait(new Runnable() {
+                            @Override
+                            public void run() {
+                                attaching = true;
+                                try {
+                                    drawable = backend.attach(drawable);
+                                } finally {
+                                    attaching = false;
+                                }
+                                Window window = SwingUtilities.getWindowAncestor((Component) drawable);
+                                if (null != window) {
+                                    window.addWindowListener(new WindowAdapter() {
+                                        @Override
+                                        public void windowClosing(WindowEvent event) {
+                                            stop();
+                                        }
+                                    });
+                                }
+                            }
+                        });
+                    } catch (InterruptedException ex) {
+                        return;
+                    } catch (InvocationTargetException ex) {
+                        throw new RuntimeException(ex.getCause());
+                    }
+                    swapIntervalPending = true;
+                    if (running) {
+                        FrameScheduler.this.run();
+                    }
+                }
+            }, "FrameScheduler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Stops rendering, so that display() is no longer called on a
+         * drawable that is being destroyed. The frame that is being
+         * rendered, if any, is finished; the scheduler does not sleep
+         * longer than a frame, so it is not interrupted.
+         */
+        public void stop() {
+            running = false;
+        }
+
+        /**
+         * Stops rendering when the context of the drawable is destroyed,
+         * unless the backend is replacing the drawable.
+         */
+        public void disposed() {
+            if (!attaching) {
+                stop();
+            }
+        }
+
+        /**
+         * Renders frames according to the mode, until stopped.
+         */
+        @Override
+        public void run() {
+            long next = System.nanoTime();
+            while (running) {
+                long start = System.nanoTime();
+                drawable.display();
+                long cost = System.nanoTime() - start;
+                frameNanos = (0 == frameNanos) ? cost : 0.9 * frameNanos + 0.1 * cost;
+
+                if (ADAPTIVE == mode) {
+                    adapt(cost);
+                }
+
+                if (FIXED == mode || ADAPTIVE == mode) {
+                    // keep the pace, but do not try to catch up on lost frames
+                    next = Math.max(next + targetNanos, System.nanoTime() - targetNanos);
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                    }
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Steps the quality down after a run of slow frames, and up after a
+         * longer run of fast frames.
+         */
+        private void adapt(long cost) {
+            if (cost > SLOW_FRACTION * targetNanos) {
+                fastFrames = 0;
+                if (++slowFrames >= SLOW_FRAMES && quality > MIN_QUALITY) {
+                    quality--;
+                    slowFrames = 0;
+                }
+            } else if (cost < FAST_FRACTION * targetNanos) {
+                slowFrames = 0;
+                if (++fastFrames >= FAST_FRAMES && quality < MAX_QUALITY) {
+                    quality++;
+                    fastFrames = 0;
+                }
+            } else {
+                slowFrames = 0;
+                fastFrames = 0;
+            }
+        }
+
+        /**
+         * Sets the swap interval for the mode, if not done yet. Must be
+         * called on the GL thread.
+         */
+        public void applySwapInterval(GL2 gl) {
+            if (swapIntervalPending) {
+                gl.setSwapInterval(VSYNC == mode ? 1 : 0);
+                swapIntervalPending = false;
+            }
+        }
+
+        /**
+         * Returns the name of the active mode.
+         */
+        public String getModeName() {
+            return SCHEDULER_MODES[mode];
+        }
+
+        /**
+         * Returns the name of the window backend.
+         */
+        public String getBackendName() {
+            return backend.getName();
+        }
+
+        /**
+         * Returns the quality level that frames should be drawn at.
+         */
+        public int getQuality() {
+            return quality;
+        }
+
+        /**
+         * Returns the smoothed duration of rendering a frame, in
+         * milliseconds.
+         */
+        public double getFrameMillis() {
+            return frameNanos / 1e6;
+        }
+
+        /**
+         * Returns the fraction of the target frame time that is left after
+         * rendering a frame; negative when frames take too long.
+         */
+        public double getHeadroom() {
+            return 1 - frameNanos / targetNanos;
+        }
+    }
+
+    /**
+     * Records the rendered frames to numbered PNG images, without
+     * stalling the rendering.
+     *
+     * Every frame is read into the next pixel buffer object of a ring, so
+     * the copy runs on the GPU while the next frames are drawn. A buffer
+     * is mapped only when the ring comes around to it again, two frames
+     * later by default, by which time its copy is done, and its pixels are
+     * handed to an encoder thread that compresses and writes them. When
+     * the encoder falls behind, frames are skipped rather than waited
+     * for. The encoder thread is started when the first frame is
+     * recorded.
+     *
+     * Without pixel buffer objects the frames are read synchronously.
+     */
+    private class FrameCapture implements Runnable, ResourceOwner {
+
+        /** Default number of pixel buffer objects in the ring. */
+        public final static int RING = 2;
+
+        /** Number of frames that can wait for the encoder. */
+        public final static int QUEUED = 4;
+
+        /** Directory into which the images are written. */
+        private final File directory;
+
+        /** Pixel buffers that the encoder is done with. */
+        private final BlockingQueue<ByteBuffer> free =
+                new ArrayBlockingQueue<ByteBuffer>(QUEUED);
+
+        /** Frames that wait for the encoder. */
+        private final BlockingQueue<CapturedFrame> encode =
+                new ArrayBlockingQueue<CapturedFrame>(QUEUED);
+
+        /** The pixel buffer objects, or null if not created yet. */
+        private GpuResource[] ring;
+
+        /** Number of pixel buffer objects in the ring. */
+        private final int ringSize;
+
+        /** Number of the frame in each pixel buffer object, or -1. */
+        private final long[] ringFrames;
+
+        /** The encoder thread, or null if not started yet. */
+        private Thread encoder;
+
+        /** Size of the frames in the ring. */
+        private volatile int width, height;
+
+        /** Whether pixel buffer objects are supported. */
+        private boolean asynchronous;
+
+        /** Whether frames are being recorded. */
+        private boolean recording;
+
+        /** Number of the next frame that is read. */
+        private long frame = 0;
+
+        /** Number of frames handed to the encoder. */
+        private volatile long captured = 0;
+
+        /** Number of frames skipped because the encoder fell behind. */
+        private volatile long skipped = 0;
+
+        /**
+         * Constructs a capture into {@code directory}, through a ring of
+         * {@code ringSize} pixel buffer objects.
+         */
+        public FrameCapture(File directory, boolean recording, int ringSize) {
+            this.directory = directory;
+            this.recording = recording;
+            this.ringSize = Math.max(1, ringSize);
+            ringFrames = new long[this.ringSize];
+            Arrays.fill(ringFrames, -1);
+        }
+
+        /**
+         * Starts or stops recording, and shows it on the status line.
+         */
+        public void toggle() {
+            recording = !recording;
+            status.show((recording ? "Recording to " : "Stopped recording to ")
+                    + directory);
+        }
+
+        /**
+         * Returns the number of frames handed to the encoder so far.
+         */
+        public long getCaptured() {
+            return captured;
+        }
+
+        /**
+         * Returns the number of frames skipped so far.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Reads the frame that was just drawn, of the given size, and
+         * hands the oldest frame in the ring to the encoder. Must be
+         * called on the GL thread, before the buffers are swapped.
+         */
+        public void capture(GL2 gl, int width, int height) {
+            if (!recording || width <= 0 || height <= 0) {
+                drain(gl);
+                return;
+            }
+            if (null == encoder) {
+                encoder = new Thread(this, "FrameCapture");
+                encoder.setDaemon(true);
+                encoder.start();
+            }
+            if (null == ring || width != this.width || height != this.height) {
+                drain(gl);
+                createRing(gl, width, height);
+            }
+            gl.glPixelStorei(GL_PACK_ALIGNMENT, 4);
+
+            if (!asynchronous) {
+                ByteBuffer pixels = free.poll();
+                if (null == pixels) {
+                    skipped++;
+                } else {
+                    pixels.clear();
+                    gl.glReadPixels(0, 0, width, height, GL_BGRA, GL_UNSIGNED_BYTE, pixels);
+                    submit(pixels, frame);
+                }
+                frame++;
+                return;
+            }
+
+            // the buffer that was read ringSize frames ago is done by now
+            int slot = (int) (frame % ringSize);
+            gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, ring[slot].name);
+            if (ringFrames[slot] >= 0) {
+                map(gl, ringFrames[slot]);
+            }
+            gl.glReadPixels(0, 0, width, height, GL_BGRA, GL_UNSIGNED_BYTE, 0L);
+            gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+            ringFrames[slot] = frame;
+            frame++;
+        }
+
+        /**
+         * Hands the frames that are still in the ring to the encoder, and
+         * deletes the ring.
+         */
+        private void drain(GL2 gl) {
+            if (null == ring) {
+                return;
+            }
+            // from the oldest frame on, so they reach the encoder in order
+            for (int i = 0; i < ringSize; i++) {
+                int slot = (int) ((frame + i) % ringSize);
+                if (ringFrames[slot] >= 0) {
+                    gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, ring[slot].name);
+                    map(gl, ringFrames[slot]);
+                    ringFrames[slot] = -1;
+                }
+            }
+            gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+            for (GpuResource resource : ring) {
+                resources.release(resource);
+            }
+            ring = null;
+        }
+
+        /**
+         * Copies the pixels of {@code number} out of the bound pixel
+         * buffer object, and hands them to the encoder if it keeps up.
+         */
+        private void map(GL2 gl, long number) {
+            ByteBuffer pixels = free.poll();
+            if (null == pixels) {
+                skipped++;
+                return;
+            }
+            ByteBuffer mapped = gl.glMapBuffer(GL_PIXEL_PACK_BUFFER, GL_READ_ONLY);
+            if (null != mapped) {
+                pixels.clear();
+                mapped.clear();
+                pixels.put(mapped);
+                pixels.flip();
+                gl.glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+                submit(pixels, number);
+            } else {
+                free.offer(pixels);
+                skipped++;
+            }
+        }
+
+        /**
+         * Creates the ring and the pixel buffers for frames of the given
+         * size.
+         */
+        private void createRing(GL2 gl, int width, int height) {
+            this.width = width;
+            this.height = height;
+            int bytes = 4 * width * height;
+
+            // the encoder may still hold buffers of the old size
+            free.clear();
+            for (int i = 0; i < QUEUED; i++) {
+                free.offer(ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN));
+            }
+
+            asynchronous = gl.isExtensionAvailable("GL_ARB_pixel_buffer_object");
+            ring = new GpuResource[asynchronous ? ringSize : 0];
+            int[] names = new int[ring.length];
+            if (ring.length > 0) {
+                gl.glGenBuffers(ring.length, names, 0);
+            }
+            for (int i = 0; i < ring.length; i++) {
+                gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, names[i]);
+                gl.glBufferData(GL_PIXEL_PACK_BUFFER, bytes, null, GL_STREAM_READ);
+                ring[i] = resources.register(GpuResources.BUFFER, names[i], 1, bytes,
+                                             "capture buffer " + i, this, false);
+            }
+            gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+            Arrays.fill(ringFrames, -1);
+        }
+
+        /**
+         * Queues {@code pixels} of frame {@code number} for the encoder.
+         */
+        private void submit(ByteBuffer pixels, long number) {
+            encode.offer(new CapturedFrame(pixels, number, width, height));
+            captured++;
+        }
+
+        /**
+         * Forgets the ring when its buffers were deleted along with the
+         * OpenGL context; it is created again for the next frame.
+         */
+        @Override
+        public void evicted(GpuResource resource) {
+            ring = null;
+            Arrays.fill(ringFrames, -1);
+        }
+
+        /**
+         * Encodes the queued frames, on the encoder thread.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                CapturedFrame next;
+                try {
+                    next = encode.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                BufferedImage image = new BufferedImage(next.width, next.height,
+                                                        BufferedImage.TYPE_INT_RGB);
+                int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                IntBuffer pixels = next.pixels.asIntBuffer();
+
+                // OpenGL stores the rows from the bottom up
+                for (int row = 0; row < next.height; row++) {
+                    pixels.position((next.height - 1 - row) * next.width);
+                    pixels.get(rgb, row * next.width, next.width);
+                }
+                // the buffer is free again once its pixels are copied
+                if (next.pixels.capacity() == 4 * width * height) {
+                    free.offer(next.pixels);
+                }
+
+                File file = new File(directory, String.format("frame%06d.png", next.number));
+                try {
+                    directory.mkdirs();
+                    ImageIO.write(image, "png", file);
+                } catch (IOException ex) {
+                    System.err.println("Could not write " + file + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The pixels of a frame, on their way to the encoder.
+     */
+    private static class CapturedFrame {
+
+        /** The pixels, as BGRA rows from the bottom up. */
+        public final ByteBuffer pixels;
+
+        /** Number of the frame. */
+        public final long number;
+
+        /** Size of the frame. */
+        public final int width, height;
+
+        /**
+         * Constructs a captured frame.
+         */
+        public CapturedFrame(ByteBuffer pixels, long number, int width, int height) {
+            this.pixels = pixels;
+            this.number = number;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Input listener that takes the place of the one of the base class.
+     * It reacts to the same mouse drags, mouse wheel and keys, but only
+     * queues them; the render thread applies them to the camera at the
+     * start of a frame.
+     */
+    private class InputListener extends MouseAdapter implements KeyListener {
+
+        /** Position at which the last drag event was handled. */
+        private int dragSourceX;
+        private int dragSourceY;
+
+        /** The button that started the drag. */
+        private int mouseButton;
+
+        /** Whether the drag moves a control point of the track. */
+        private boolean editing;
+
+        @Override
+        public void mousePressed(MouseEvent e) {
+            e.getComponent().requestFocusInWindow();
+            dragSourceX = e.getX();
+            dragSourceY = e.getY();
+            mouseButton = e.getButton();
+            // Shift and the left button drag a control point of the track
+            editing = MouseEvent.BUTTON1 == mouseButton && e.isShiftDown();
+            if (editing) {
+                input.offer(InputQueue.GRAB, e.getX(), e.getY());
+            }
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e) {
+            if (editing) {
+                input.offer(InputQueue.RELEASE, 0, 0);
+                editing = false;
+            }
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            float dx = e.getX() - dragSourceX;
+            float dy = e.getY() - dragSourceY;
+            if (editing) {
+                input.offer(InputQueue.DRAG, e.getX(), e.getY());
+            } else if (MouseEvent.BUTTON1 == mouseButton) {
+                input.offer(InputQueue.ORBIT, dx, dy);
+            } else if (MouseEvent.BUTTON3 == mouseButton) {
+                input.offer(InputQueue.WIDEN, 0, dy);
+            }
+            dragSourceX = e.getX();
+            dragSourceY = e.getY();
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e) {
+            if (MouseEvent.BUTTON1 == e.getButton() && !e.isShiftDown()) {
+                input.offer(InputQueue.PICK, e.getX(), e.getY());
+            }
+        }
+
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            input.offer(InputQueue.ZOOM, e.getWheelRotation(), 0);
+        }
+
+        @Override
+        public void keyPressed(KeyEvent e) {
+            input.offer(InputQueue.KEY, e.getKeyChar(), 0);
+        }
+
+        @Override
+        public void keyTyped(KeyEvent e) {
+        }
+
+        @Override
+        public void keyReleased(KeyEvent e) {
+        }
+    }
+
+    /**
+     * Implementation of a camera with a position and orientation.
+     */
+    private class Camera {
+
+        /** The position of the camera. */
+        public Vector eye = new Vector(3f, 6f, 5f);
+
+        /** The point to which the camera is looking. */
+        public Vector center = Vector.O;
+
+        /** The up vector. */
+        public Vector up = Vector.Z;
+
+        /**
+         * Robot to show in Helicopter and MotorCycle modes.
+         */
+        public int robotNum;
+
+        /**
+         * Distance of the eye to each robot, as of the last update.
+         */
+        private double[] robotDistances = new double[robots.length];
+
+        /** The points of the track nearest to the eye candidates, reused between frames. */
+        private final TrackHit[] eyeHits = new TrackHit[] {new TrackHit(), new TrackHit()};
+
+        /** Candidate eye positions of the motorcycle mode, x, y and z interleaved. */
+        private final double[] eyeCandidates = new double[6];
+
+        /**
+         * Updates the camera viewpoint and direction based on the
+         * selected camera mode.
+         *
+         * For the camera mode, we periodically switch all robots for
+         * the helicopter, motor cycle and first person mode. The
+         * simulation schedules the switches, and publishes them in the
+         * snapshot, unless a click locked the camera onto a robot.
+         */
+        public void update(int mode) {
+            robotNum = lockedRobot >= 0 ? lockedRobot : snapshot.cameraRobot;
+            // Helicopter mode
+            if (1 == mode) {
+                setHelicopterMode();
+
+            // Motor cycle mode
+            } else if (2 == mode) {
+                setMotorCycleMode();
+
+            // First person mode
+            } else if (3 == mode) {
+                setFirstPersonMode();
+
+            // Auto mode
             } else if (4 == mode) {
                 setAutoMode();
             // Default mode
             } else {
-                setDefaultMode();
+                setDefaultMode();
+            }
+
+            // Measure the distance to the robots for their level of detail
+            for (int i = 0; i < robots.length; i++) {
+                double dx = snapshot.x[i] - eye.x();
+                double dy = snapshot.y[i] - eye.y();
+                double dz = snapshot.z[i] - eye.z();
+                robotDistances[i] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+        }
+
+        /**
+         * Points the camera at {@code robot} in {@code mode}, the
+         * helicopter, motorcycle or first person mode, for a view of the
+         * split screen.
+         */
+        public void update(int mode, int robot) {
+            robotNum = robot;
+            if (1 == mode) {
+                setHelicopterMode();
+            } else if (2 == mode) {
+                setMotorCycleMode();
+            } else {
+                setFirstPersonMode();
             }
         }
 
+        /**
+         * Returns the distance of the eye to robot {@code i}, as of the
+         * last update.
+         */
+        public double getRobotDistance(int i) {
+            return robotDistances[i];
+        }
+
         /**
          * Computes {@code eye}, {@code center}, and {@code up}, based
          * on the camera's default mode.
@@ -967,13 +3906,14 @@ public class RobotRace extends Base {
         }
 
         private Vector calculateCurrentRobotPosition() {
-            return robots[robotNum].getPosition(gs.tAnim);
+            return snapshot.getPosition(robotNum);
         }
         private Vector calculateCurrentRobotPositionTangent() {
-            return robots[robotNum].getPositionTangent(gs.tAnim);
+            return snapshot.getTangent(robotNum);
         }
         private Vector calculateCurrentRobotHeadPosition() {
-            return robots[robotNum].getHeadPosition(gs.tAnim);
+            return calculateCurrentRobotPosition()
+                .add(new Vector(0, 0, Robot.HEAD_POS_Z + Robot.HEAD_HEIGHT / 2));
         }
 
         /**
@@ -995,7 +3935,9 @@ public class RobotRace extends Base {
          *
          * We take the tangent of the current robot position on the
          * track, and calculate a orthogonal vector parallel with the
-         * XOY plane. On this vector, the camera eye is placed.
+         * XOY plane. On this vector, the camera eye is placed, on the
+         * side of the robot where it is off the track; a track that
+         * curves back may pass there.
          */
         private void setMotorCycleMode() {
             // center is the robot position
@@ -1003,9 +3945,20 @@ public class RobotRace extends Base {
             up = Vector.Z;
 
             // calculate the eye position
-            eye = calculateCurrentRobotPositionTangent()
+            Vector side = calculateCurrentRobotPositionTangent()
                 .cross(Vector.Z).normalized().scale(20);
-            eye = center.add(eye);
+            eye = center.add(side);
+            Vector other = center.subtract(side);
+            eyeCandidates[0] = eye.x();
+            eyeCandidates[1] = eye.y();
+            eyeCandidates[2] = eye.z();
+            eyeCandidates[3] = other.x();
+            eyeCandidates[4] = other.y();
+            eyeCandidates[5] = other.z();
+            raceTrack.getTrackIndex(snapshot.trackNr).nearest(eyeCandidates, 2, eyeHits);
+            if (eyeHits[0].isOnTrack() && !eyeHits[1].isOnTrack()) {
+                eye = other;
+            }
             eye = eye.add(new Vector(0, 0, 1));
         }
 
@@ -1029,11 +3982,7 @@ public class RobotRace extends Base {
          */
         private void setAutoMode()
         {
-            if (lastTime + 10 <= Math.round(gs.tAnim)) {
-                lastTime = Math.round(gs.tAnim);
-                mode = rand.nextInt(4);
-            }
-            switch (mode) {
+            switch (snapshot.cameraMode) {
                 case 0:
                     setDefaultMode();
                     break;
@@ -1048,23 +3997,379 @@ public class RobotRace extends Base {
                     break;
             }
         }
+    }
+
+    /**
+     * View frustum, mirroring the projection and modelview transforms
+     * that are set up in {@link #setView()} on the CPU, so that objects
+     * can be tested for visibility without reading back from OpenGL.
+     */
+    private static class Frustum {
+
+        /** Combined projection and view matrix, in row-major order. */
+        private final double[] matrix = new double[16];
+
+        /** View matrix, in row-major order. */
+        private final double[] view = new double[16];
+
+        /** Inverse of the combined matrix, in row-major order, for picking. */
+        private final double[] inverse = new double[16];
+
+        /** The six clipping planes: a, b, c, d such that ax + by + cz + d >= 0 inside. */
+        private final double[] planes = new double[24];
+
+        /**
+         * Sets the frustum from the parameters of {@code gluPerspective}
+         * and {@code gluLookAt}.
+         */
+        public void set(double fovy, double aspect, double zNear, double zFar,
+                        Vector eye, Vector center, Vector up) {
+            // Projection matrix, as built by gluPerspective
+            double f = 1 / Math.tan(Math.toRadians(fovy) / 2);
+            double[] projection = new double[] {
+                f / aspect, 0, 0, 0,
+                0, f, 0, 0,
+                0, 0, (zFar + zNear) / (zNear - zFar), 2 * zFar * zNear / (zNear - zFar),
+                0, 0, -1, 0
+            };
+
+            // View matrix, as built by gluLookAt
+            Vector forward = center.subtract(eye).normalized();
+            Vector side = forward.cross(up).normalized();
+            Vector upward = side.cross(forward);
+            System.arraycopy(new double[] {
+                side.x(), side.y(), side.z(), -side.dot(eye),
+                upward.x(), upward.y(), upward.z(), -upward.dot(eye),
+                -forward.x(), -forward.y(), -forward.z(), forward.dot(eye),
+                0, 0, 0, 1
+            }, 0, view, 0, 16);
+
+            for (int row = 0; row < 4; row++) {
+                for (int col = 0; col < 4; col++) {
+                    double sum = 0;
+                    for (int k = 0; k < 4; k++) {
+                        sum += projection[4 * row + k] * view[4 * k + col];
+                    }
+                    matrix[4 * row + col] = sum;
+                }
+            }
+
+            // Extract the planes from the rows of the combined matrix:
+            // left, right, bottom, top, near and far
+            for (int plane = 0; plane < 6; plane++) {
+                int row = plane / 2;
+                double sign = (plane % 2 == 0) ? 1 : -1;
+                double a = matrix[12] + sign * matrix[4 * row];
+                double b = matrix[13] + sign * matrix[4 * row + 1];
+                double c = matrix[14] + sign * matrix[4 * row + 2];
+                double d = matrix[15] + sign * matrix[4 * row + 3];
+                double length = Math.sqrt(a * a + b * b + c * c);
+                planes[4 * plane] = a / length;
+                planes[4 * plane + 1] = b / length;
+                planes[4 * plane + 2] = c / length;
+                planes[4 * plane + 3] = d / length;
+            }
+        }
 
         /**
-         * Set robot number.
+         * Returns the combined projection and view matrix, in row-major
+         * order.
          */
-        public void setRobotNum()
-        {
-            if (lastRobotTime + 5 <= Math.round(gs.tAnim)) {
-                lastRobotTime = Math.round(gs.tAnim);
-                robotNum = rand.nextInt(4);
+        public double[] getMatrix() {
+            return matrix;
+        }
+
+        /**
+         * Returns the view matrix, as set by {@code gluLookAt}, in row-major
+         * order.
+         */
+        public double[] getViewMatrix() {
+            return view;
+        }
+
+        /**
+         * Stores the ray through the point at normalized device coordinates
+         * (ndcX, ndcY) in {@code ray}: its origin on the near plane and its
+         * unit direction, x, y and z of each. The ray follows from
+         * inverting the combined matrix, so nothing is read back from
+         * OpenGL.
+         */
+        public void getRay(double ndcX, double ndcY, double[] ray) {
+            invert(matrix, inverse);
+            unproject(ndcX, ndcY, -1, ray, 0);
+            unproject(ndcX, ndcY, 1, ray, 3);
+            double dx = ray[3] - ray[0];
+            double dy = ray[4] - ray[1];
+            double dz = ray[5] - ray[2];
+            double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            ray[3] = dx / length;
+            ray[4] = dy / length;
+            ray[5] = dz / length;
+        }
+
+        /**
+         * Stores the world coordinates of the point at the given normalized
+         * device coordinates in {@code result} at {@code offset}, using the
+         * inverse of the combined matrix.
+         */
+        private void unproject(double ndcX, double ndcY, double ndcZ,
+                               double[] result, int offset) {
+            double w = inverse[12] * ndcX + inverse[13] * ndcY + inverse[14] * ndcZ + inverse[15];
+            for (int row = 0; row < 3; row++) {
+                result[offset + row] = (inverse[4 * row] * ndcX + inverse[4 * row + 1] * ndcY
+                        + inverse[4 * row + 2] * ndcZ + inverse[4 * row + 3]) / w;
+            }
+        }
+
+        /**
+         * Stores the inverse of the row-major 4x4 matrix {@code m} in
+         * {@code result}, by Gauss-Jordan elimination with partial
+         * pivoting.
+         */
+        private static void invert(double[] m, double[] result) {
+            double[] a = new double[16];
+            System.arraycopy(m, 0, a, 0, 16);
+            for (int i = 0; i < 16; i++) {
+                result[i] = (i % 5 == 0) ? 1 : 0;
+            }
+            for (int col = 0; col < 4; col++) {
+                // swap the row with the largest pivot up
+                int pivot = col;
+                for (int row = col + 1; row < 4; row++) {
+                    if (Math.abs(a[4 * row + col]) > Math.abs(a[4 * pivot + col])) {
+                        pivot = row;
+                    }
+                }
+                for (int k = 0; k < 4; k++) {
+                    double swap = a[4 * col + k];
+                    a[4 * col + k] = a[4 * pivot + k];
+                    a[4 * pivot + k] = swap;
+                    swap = result[4 * col + k];
+                    result[4 * col + k] = result[4 * pivot + k];
+                    result[4 * pivot + k] = swap;
+                }
+                double scale = 1 / a[4 * col + col];
+                for (int k = 0; k < 4; k++) {
+                    a[4 * col + k] *= scale;
+                    result[4 * col + k] *= scale;
+                }
+                for (int row = 0; row < 4; row++) {
+                    double factor = a[4 * row + col];
+                    if (row == col || 0 == factor) {
+                        continue;
+                    }
+                    for (int k = 0; k < 4; k++) {
+                        a[4 * row + k] -= factor * a[4 * col + k];
+                        result[4 * row + k] -= factor * result[4 * col + k];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns whether the sphere at (x, y, z) with radius {@code r}
+         * intersects the frustum.
+         */
+        public boolean isSphereVisible(double x, double y, double z, double r) {
+            for (int p = 0; p < 24; p += 4) {
+                if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z
+                        + planes[p + 3] < -r) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns whether the box stored in {@code bounds} at
+         * {@code offset}, as min x, y, z and max x, y, z, intersects the
+         * frustum. Boxes near the corners of the frustum may be reported
+         * visible, which is conservative.
+         */
+        public boolean isBoxVisible(double[] bounds, int offset) {
+            for (int p = 0; p < 24; p += 4) {
+                // Test the corner that lies furthest along the plane normal
+                double x = planes[p] >= 0 ? bounds[offset + 3] : bounds[offset];
+                double y = planes[p + 1] >= 0 ? bounds[offset + 4] : bounds[offset + 1];
+                double z = planes[p + 2] >= 0 ? bounds[offset + 5] : bounds[offset + 2];
+                if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z
+                        + planes[p + 3] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Line of text at the bottom of the window, for short messages such
+     * as lead changes. A message is shown for {@link #STATUS_SECONDS},
+     * or until the next one replaces it. Messages may come from any
+     * thread; they are drawn on the GL thread.
+     */
+    private class StatusLine {
+
+        /** The message, or null if there is none. */
+        private String message = null;
+
+        /** Time at which the message was shown, from System.nanoTime(). */
+        private long shownNanos;
+
+        /** Time that the message stays, in seconds. */
+        private double seconds;
+
+        /**
+         * Shows {@code message}, replacing the current one, for
+         * {@link #STATUS_SECONDS}.
+         */
+        public void show(String message) {
+            show(message, STATUS_SECONDS);
+        }
+
+        /**
+         * Shows {@code message}, replacing the current one, for the given
+         * number of seconds.
+         */
+        public synchronized void show(String message, double seconds) {
+            this.message = message;
+            this.seconds = seconds;
+            shownNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns the message to draw, or null once it has expired.
+         */
+        private synchronized String getMessage() {
+            if (null != message && System.nanoTime() - shownNanos > seconds * 1e9) {
+                message = null;
+            }
+            return message;
+        }
+
+        /**
+         * Draws the message over the scene, in the bottom left corner.
+         */
+        public void draw() {
+            String text = getMessage();
+            if (null == text) {
+                return;
             }
+            gl.glPushAttrib(GL_ENABLE_BIT | GL_CURRENT_BIT);
+            gl.glDisable(GL_LIGHTING);
+            gl.glDisable(GL_TEXTURE_1D);
+            gl.glDisable(GL_TEXTURE_2D);
+            gl.glDisable(GL_DEPTH_TEST);
+            // the color is taken when the raster position is set
+            gl.glColor3f(0f, 0f, 0f);
+            gl.glWindowPos2i(8, 8);
+            glut.glutBitmapString(GLUT.BITMAP_HELVETICA_12, text);
+            gl.glPopAttrib();
+        }
+    }
+
+    /**
+     * Statistics about the drawing of a single frame.
+     */
+    public static class FrameStats {
+
+        /** Number of robots that were drawn. */
+        public int robotsDrawn;
+
+        /** Number of robots that were outside of the view frustum. */
+        public int robotsCulled;
+
+        /** Number of track chunks that were drawn. */
+        public int trackChunksDrawn;
+
+        /** Number of track chunks that were outside of the view frustum. */
+        public int trackChunksCulled;
+
+        /** Whether the terrain was outside of the view frustum. */
+        public boolean terrainCulled;
+
+        /** Number of robots that were drawn at medium detail. */
+        public int robotsMediumDetail;
+
+        /** Number of robots that were drawn at far detail. */
+        public int robotsFarDetail;
+
+        /** Mode of the frame scheduler, or null if there is none. */
+        public String schedulerMode;
+
+        /** Window backend, or null if there is no frame scheduler. */
+        public String backend;
+
+        /**
+         * Smoothed duration of rendering a frame, in milliseconds. This
+         * includes copying the frame back into Swing for the panel backend.
+         */
+        public double frameMillis;
+
+        /** Fraction of the target frame time left after rendering a frame. */
+        public double headroom;
+
+        /** Quality level the frame was drawn at. */
+        public int quality;
+
+        /** Number of views that the frame was drawn in. */
+        public int views;
+
+        /** Estimated GPU memory in use after the frame, in bytes. */
+        public long gpuBytes;
+
+        /** Number of objects evicted from the GPU so far. */
+        public int gpuEvictions;
+
+        /** Number of frames recorded so far. */
+        public long framesCaptured;
+
+        /** Number of frames skipped so far because recording fell behind. */
+        public long framesSkipped;
+
+        /**
+         * Clears the statistics for a new frame.
+         */
+        public void reset() {
+            robotsDrawn = 0;
+            robotsCulled = 0;
+            trackChunksDrawn = 0;
+            trackChunksCulled = 0;
+            terrainCulled = false;
+            robotsMediumDetail = 0;
+            robotsFarDetail = 0;
+        }
+
+        /**
+         * Textual format.
+         */
+        @Override
+        public String toString() {
+            return "FrameStats{" +
+                    "robotsDrawn=" + robotsDrawn +
+                    ", robotsCulled=" + robotsCulled +
+                    ", trackChunksDrawn=" + trackChunksDrawn +
+                    ", trackChunksCulled=" + trackChunksCulled +
+                    ", terrainCulled=" + terrainCulled +
+                    ", robotsMediumDetail=" + robotsMediumDetail +
+                    ", robotsFarDetail=" + robotsFarDetail +
+                    ", schedulerMode=" + schedulerMode +
+                    ", backend=" + backend +
+                    ", frameMillis=" + frameMillis +
+                    ", headroom=" + headroom +
+                    ", quality=" + quality +
+                    ", views=" + views +
+                    ", gpuBytes=" + gpuBytes +
+                    ", gpuEvictions=" + gpuEvictions +
+                    ", framesCaptured=" + framesCaptured +
+                    ", framesSkipped=" + framesSkipped +
+                    '}';
         }
     }
 
     /**
      * Implementation of a race track that is made from Bezier segments.
      */
-    private class RaceTrack {
+    private class RaceTrack extends TrackGeometry implements ResourceOwner {
         
         /** Material of tracks, from innermost to outermost. */
         private Material[] materials = new Material[] {
@@ -1080,113 +4385,18 @@ public class RobotRace extends Base {
         /** Material of the track edge. */
         private Material trackEdgeMaterial = Material.GRAY;
         
-        /** Number of display lists to create per track. */
-        private int displayListPerTrackAmount = 7;
-
-        /** Array with control points for the O-track. */
-        private Vector[] controlPointsOTrack = new Vector[] {
-            new Vector(-12, -12, 2),
-            new Vector(-12, -4, 2),
-            new Vector(-12, 4, 2),
-            new Vector(-12, 12, 2),
-            new Vector(-12, 24, 2),
-            new Vector(12, 24, 2),
-            new Vector(12, 12, 2),
-            new Vector(12, 4, 2),
-            new Vector(12, -4, 2),
-            new Vector(12, -12, 2),
-            new Vector(12, -24, 2),
-            new Vector(-12, -24, 2),
-            new Vector(-12, -12, 2)
-        };
+        /** Number of display lists to create per chunk of a track. */
+        private int displayListPerChunkAmount = 6;
 
-        /** Array with control points for the L-track. */
-        private Vector[] controlPointsLTrack = new Vector[] {
-            new Vector(-7.5, 7.5, 2),
-            new Vector(-7.5, 12.5, 2),
-            new Vector(0, 12.5, 2),
-            new Vector(0, 7.5, 2),
-            new Vector(0, 2.5, 2),
-            new Vector(2.5, 0, 2),
-            new Vector(7.5, 0, 2),
-            new Vector(12.5, 0, 2),
-            new Vector(12.5, -7.5, 2),
-            new Vector(7.5, -7.5, 2),
-            new Vector(5, -7.5, 2),
-            new Vector(2.5, -7.5, 2),
-            new Vector(0, -7.5, 2),
-            new Vector(-7.5, -7.5, 2),
-            new Vector(-7.5, -7.5, 2),
-            new Vector(-7.5, 0, 2),
-            new Vector(-7.5, 2.5, 2),
-            new Vector(-7.5, 5, 2),
-            new Vector(-7.5, 7.5, 2),
-        };
+        /** Number of chunks in which a track is split for culling. */
+        private final static int CHUNKS = 30;
 
-        /** Array with control points for the C-track. */
-        private Vector[] controlPointsCTrack = new Vector[] {
-            new Vector(-7.5, 15, 2),
-            new Vector(-5, 15, 2),
-            new Vector(-2.5, 15, 2),
-            new Vector(0, 15, 2),
-            new Vector(7.5, 15, 2),
-            new Vector(7.5, 7.5, 2),
-            new Vector(0, 7.5, 2),
-            new Vector(-7.5, 7.5, 2),
-            new Vector(-7.5, -7.5, 2),
-            new Vector(0, -7.5, 2),
-            new Vector(7.5, -7.5, 2),
-            new Vector(7.5, -15, 2),
-            new Vector(0, -15, 2),
-            new Vector(-2.5, -15, 2),
-            new Vector(-5, -15, 2),
-            new Vector(-7.5, -15, 2),
-            new Vector(-10, -15, 2),
-            new Vector(-15, -12.5, 2),
-            new Vector(-15, -7.5, 2),
-            new Vector(-15, -2.5, 2),
-            new Vector(-15, 2.5, 2),
-            new Vector(-15, 7.5, 2),
-            new Vector(-15, 10, 2),
-            new Vector(-10, 15, 2),
-            new Vector(-7.5, 15, 2)
-        };
+        /** Bounding boxes of the chunks of each track, once compiled. */
+        private double[][] chunkBounds = new double[5][];
+
+        /** Views in which each chunk of the current track is visible, as bits. */
+        private int[] chunkViews = new int[CHUNKS];
 
-        /** Array with control points for the custom track. */
-        private Vector[] controlPointsCustomTrack = new Vector[] {
-            new Vector(0, 15, 2),
-            new Vector(2.5, 15, 2),
-            new Vector(5, 15, 2),
-            new Vector(7.5, 15, 2),
-            new Vector(15, 15, 2),
-            new Vector(15, 7.5, 2),
-            new Vector(7.5, 7.5, 2),
-            new Vector(0, 7.5, 2),
-            new Vector(0, -7.5, 2),
-            new Vector(7.5, -7.5, 2),
-            new Vector(15, -7.5, 2),
-            new Vector(15, -15, 2),
-            new Vector(7.5, -15, 2),
-            new Vector(5, -15, 2),
-            new Vector(2.5, -15, 2),
-            new Vector(0, -15, 2),
-            new Vector(-2.5, -15, 2),
-            new Vector(-5, -15, 2),
-            new Vector(-7.5, -15, 2),
-            new Vector(-15, -15, 2),
-            new Vector(-15, -7.5, 2),
-            new Vector(-7.5, -7.5, 2),
-            new Vector(0, -7.5, 2),
-            new Vector(0, 7.5, 2),
-            new Vector(-7.5, 7.5, 2),
-            new Vector(-15, 7.5, 2),
-            new Vector(-15, 15, 2),
-            new Vector(-7.5, 15, 2),
-            new Vector(-5, 15, 2),
-            new Vector(-2.5, 15, 2),
-            new Vector(0, 15, 2)
-        };
-        
         /** Number of segments to be used to draw the race tracks. */
         private int SEGMENTS = 300;
         
@@ -1222,18 +4432,36 @@ public class RobotRace extends Base {
         
         /** The last selected track nr. */
         private int currentTrackNr = 0;
+
+        /**
+         * Frames of the segment boundaries of the chunk that is compiled,
+         * from the one before its first, as point and normal.
+         */
+        private double[] chunkFrames = new double[0];
+
+        /** First segment of the chunk whose frames are loaded. */
+        private int chunkFramesFrom;
+
+        /** The display lists of each track on the GPU, or null if not compiled. */
+        private final GpuResource[] trackResources = new GpuResource[5];
+
+        /** The track whose display lists are held on to, or -1. */
+        private int retainedTrackNr = -1;
+
+        /** Chunks to compile again after a control point moved. */
+        private final boolean[] dirtyChunks = new boolean[CHUNKS];
         
         /** The last selected display list. */
         private int currentDisplayList;
         
-        /** The last selected array of control points. */
-        private Vector[] currentControlPoints;
-        
         /** The texture for the track edges. */
         private Texture trackEdgeTexture = null;
         
         /** Whether the texture for the track edges has been set up. */
         private boolean trackEdgeTextureSetUp = false;
+
+        /** The texture for the track edges on the GPU, or null. */
+        private GpuResource trackEdgeTextureResource = null;
         
         /** The texture for the tracks. */
         private Texture trackTexture = null;
@@ -1245,17 +4473,78 @@ public class RobotRace extends Base {
          * Constructs the race track.
          */
         public RaceTrack() {
-            
+
+        }
+
+        /**
+         * Changes the number of segments used to draw the race tracks; the
+         * display lists of the tracks are compiled again when drawn next.
+         */
+        public void setSegments(int segments) {
+            if (segments == SEGMENTS) {
+                return;
+            }
+            SEGMENTS = segments;
+            for (int trackNr = 0; trackNr < trackResources.length; trackNr++) {
+                resources.discard(trackResources[trackNr]);
+            }
+        }
+
+        /**
+         * Forgets the display lists of the track whose lists were deleted,
+         * or the texture for the track edges; they are created again when
+         * the track is drawn next.
+         */
+        @Override
+        public void evicted(GpuResource resource) {
+            if (resource == trackEdgeTextureResource) {
+                trackEdgeTextureResource = null;
+                trackEdgeTexture = null;
+                trackEdgeTextureSetUp = false;
+            }
+            for (int trackNr = 0; trackNr < trackResources.length; trackNr++) {
+                if (resource == trackResources[trackNr]) {
+                    forgetDisplayList(trackNr);
+                }
+            }
+        }
+
+        /**
+         * Marks the display lists of the given track as deleted.
+         */
+        private void forgetDisplayList(int trackNr) {
+            trackResources[trackNr] = null;
+            if (trackNr == retainedTrackNr) {
+                retainedTrackNr = -1;
+            }
+            if (0 == trackNr) {
+                displayListTestTrackSetUp = false;
+            } else if (1 == trackNr) {
+                displayListOTrackSetUp = false;
+            } else if (2 == trackNr) {
+                displayListLTrackSetUp = false;
+            } else if (3 == trackNr) {
+                displayListCTrackSetUp = false;
+            } else if (4 == trackNr) {
+                displayListCustomTrackSetUp = false;
+            }
         }
 
         /**
-         * Draws this track, based on the selected track number.
+         * Prepares this track, based on the selected track number, for
+         * drawing in the views of the current frame: compiles it if
+         * needed, and determines which chunks each view shows.
          */
-        public void draw(int trackNr) {
+        public void prepare(int trackNr) {
             
             if (!trackEdgeTextureSetUp) {
                 /** Loads the track edge texture **/
                 trackEdgeTexture = load2DTexture("brick.png", gl);
+                if (null != trackEdgeTexture) {
+                    trackEdgeTextureResource = resources.register(GpuResources.TEXTURE,
+                            trackEdgeTexture.getTextureObject(gl), 1,
+                            trackEdgeTexture.getEstimatedMemorySize(), "brick.png", this, false);
+                }
                 trackEdgeTextureSetUp = true;
             }
             
@@ -1267,6 +4556,13 @@ public class RobotRace extends Base {
             
             currentTrackNr = trackNr;
 
+            // Let go of the display lists of the track drawn before, so
+            // that they may be evicted
+            if (trackNr != retainedTrackNr && retainedTrackNr >= 0) {
+                resources.release(trackResources[retainedTrackNr]);
+                retainedTrackNr = -1;
+            }
+
             // The test track is selected
             if (0 == trackNr) {
                 currentDisplayList = displayListTestTrack;
@@ -1315,25 +4611,60 @@ public class RobotRace extends Base {
                 }
 
             }
-            
-            // Execute the display lists for the current track
-            executeCurrentDisplayList();
+
+            // Account for the display lists, whether compiled just now or
+            // before, and hold on to them while the track is selected
+            if (null == trackResources[trackNr]) {
+                // Every vertex has a position, a normal and texture coordinates
+                long bytes = (SEGMENTS*12L+4)*32;
+                trackResources[trackNr] = resources.register(GpuResources.LIST,
+                        currentDisplayList, 1+CHUNKS*displayListPerChunkAmount,
+                        bytes, "track " + trackNr, this, true);
+            } else if (trackNr != retainedTrackNr) {
+                resources.retain(trackResources[trackNr]);
+            }
+            retainedTrackNr = trackNr;
+            resources.touch(trackResources[trackNr]);
+
+            // Determine which chunks of the track are in view, for all
+            // views in a single pass
+            double[] bounds = chunkBounds[currentTrackNr];
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                chunkViews[chunk] = 0;
+                for (int view = 0; view < viewCount; view++) {
+                    if (viewFrusta[view].isBoxVisible(bounds, 6 * chunk)) {
+                        chunkViews[chunk] |= 1 << view;
+                        frameStats.trackChunksDrawn++;
+                    } else {
+                        frameStats.trackChunksCulled++;
+                    }
+                }
+            }
         }
-        
-        public void executeCurrentDisplayList() {
-            
+
+        /**
+         * Draws the chunks of the prepared track that {@code view} shows.
+         */
+        public void draw(int view) {
+            executeCurrentDisplayList(view);
+        }
+
+        public void executeCurrentDisplayList(int view) {
+
             // Execute the display lists of the curves
                         for (int curve = 0; curve < 4; curve++) {
                             // Pass the material for this curve to OpenGL
                             materials[curve].setSurfaceColor(gl);
-                            // Call the display list
-                            gl.glCallList(currentDisplayList+curve);
+                            // Call the display list of every visible chunk
+                            callVisibleChunks(curve, view);
                         }
                     // Execute the display lists of the start line
-                        // Pass the material for the start line
-                        startLineMaterial.setSurfaceColor(gl);
-                        // Call the display list
-                        gl.glCallList(currentDisplayList+4);
+                        if (0 != (chunkViews[0] & (1 << view))) {
+                            // Pass the material for the start line
+                            startLineMaterial.setSurfaceColor(gl);
+                            // Call the display list
+                            gl.glCallList(currentDisplayList);
+                        }
                     // Execute the display lists of the track edges
                         // Pass the material for the track edges
                         gl.glDisable(GL_TEXTURE_1D);
@@ -1343,48 +4674,49 @@ public class RobotRace extends Base {
                         trackEdgeTexture.bind(gl);
                         trackEdgeMaterial.setSurfaceColor(gl);
                         for (boolean insideOrOutside : new boolean [] {true, false}) {
-                            // Call the display list
-                            gl.glCallList(currentDisplayList+5+(insideOrOutside?1:0));
+                            // Call the display list of every visible chunk
+                            callVisibleChunks(4+(insideOrOutside?1:0), view);
                         }
                         gl.glBindTexture(GL_TEXTURE_2D, 0);
             
         }
+
+        /**
+         * Calls the display list of {@code part} for every chunk of the
+         * current track that {@code view} shows.
+         */
+        private void callVisibleChunks(int part, int view) {
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                if (0 != (chunkViews[chunk] & (1 << view))) {
+                    gl.glCallList(currentDisplayList+1+chunk*displayListPerChunkAmount+part);
+                }
+            }
+        }
         
         public int compileCurrentDisplayList() {
             
-                    // Reserve the indices for the display lists, one for each curve
-                    currentDisplayList = gl.glGenLists(displayListPerTrackAmount);
-                    // Compile the display lists for the 4 curves
-                        for (int curve = 0; curve < 4; curve++) {
-                            // Start compiling the display lists
-                            gl.glNewList(currentDisplayList+curve, GL_COMPILE);
-                            // Use a triangle strip and create a closed ring out of triangles
-                            gl.glBegin(GL2.GL_TRIANGLE_STRIP);
-                                // Normal is pointing up for track
-                                gl.glNormal3d(0, 0, 1);
-                                for (int i = 0; i < SEGMENTS; i++) {
-                                    // SEGMENTS times: add a vertex describing an inner and outer point of this curve
-                                    double t = i/((double) SEGMENTS);
-                                    Vector inner = getPointOnCurrentCurve(t, curve);
-                                    Vector outer = getPointOnCurrentCurve(t, curve+1);
-                                    // Add these two vectors, that are on the same distance on the track, as vertices to the triangle strip
-                                    gl.glVertex3d(inner.x(), inner.y(), inner.z());
-                                    gl.glVertex3d(outer.x(), outer.y(), outer.z());
-                                }
-                                // Add the first inner and outer points of this curve again to close the ring
-                                Vector inner = getPointOnCurrentCurve(0, curve);
-                                Vector outer = getPointOnCurrentCurve(0, curve+1);
-                                gl.glVertex3d(inner.x(), inner.y(), inner.z());
-                                gl.glVertex3d(outer.x(), outer.y(), outer.z());
-                            // Finish the triangle strip
-                            gl.glEnd();
-                            // Finish compiling the display list
-                            gl.glEndList();
+                    // Reserve the indices for the display lists: the start line, and per chunk one for each curve and edge
+                    currentDisplayList = gl.glGenLists(1+CHUNKS*displayListPerChunkAmount);
+                    // Compile the display lists for the chunks
+                        double[] bounds = new double[6*CHUNKS];
+                        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                            compileChunk(chunk);
+                            computeChunkBounds(chunk, bounds);
                         }
+                        chunkBounds[currentTrackNr] = bounds;
                     // Compile the display list for the start line
+                        compileStartLine();
+                            
+                    return currentDisplayList;
+        }
+
+        /**
+         * Compiles the display list of the start line of the current track.
+         */
+        private void compileStartLine() {
                         // Normal is pointing up for start line
                         gl.glNormal3d(0, 0, 1);
-                        gl.glNewList(currentDisplayList+4, GL_COMPILE);
+                        gl.glNewList(currentDisplayList, GL_COMPILE);
                         // Draw the start line
                             gl.glBegin(GL2.GL_TRIANGLE_STRIP);
                             {
@@ -1403,27 +4735,138 @@ public class RobotRace extends Base {
                             gl.glEnd();
                         // Finish compiling the display list
                         gl.glEndList();
+        }
+
+        /**
+         * Moves a control point like {@link TrackGeometry#moveControlPoint},
+         * and compiles the display lists of only the chunks that changed
+         * again, if the track was compiled already. Must be called while
+         * the OpenGL context is current.
+         */
+        @Override
+        public synchronized void moveControlPoint(int trackNr, int index, Vector point) {
+            super.moveControlPoint(trackNr, index, point);
+            int displayList = getDisplayList(trackNr);
+            if (0 != displayList) {
+                int previousTrackNr = currentTrackNr;
+                int previousDisplayList = currentDisplayList;
+                currentTrackNr = trackNr;
+                currentDisplayList = displayList;
+                for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                    if (dirtyChunks[chunk]) {
+                        compileChunk(chunk);
+                        computeChunkBounds(chunk, chunkBounds[trackNr]);
+                    }
+                }
+                if (dirtyChunks[0]) {
+                    compileStartLine();
+                }
+                currentTrackNr = previousTrackNr;
+                currentDisplayList = previousDisplayList;
+            }
+            Arrays.fill(dirtyChunks, false);
+        }
+
+        /**
+         * Updates the tables like {@link TrackGeometry#updateRange}, and
+         * marks the chunks whose meshes changed. The edges of a chunk
+         * depend on the segment boundary before it as well.
+         */
+        @Override
+        protected void updateRange(int trackNr, double tFrom, double tTo) {
+            super.updateRange(trackNr, tFrom, tTo);
+            int from = (int) Math.floor(tFrom*SEGMENTS)-1;
+            int to = (int) Math.ceil(tTo*SEGMENTS)+1;
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                if (getChunkStart(chunk) <= to && getChunkStart(chunk+1) >= from) {
+                    dirtyChunks[chunk] = true;
+                }
+            }
+            // The boundaries around the start line belong to both ends
+            if (from < 0) {
+                dirtyChunks[CHUNKS-1] = true;
+            }
+            if (to > SEGMENTS) {
+                dirtyChunks[0] = true;
+            }
+        }
+
+        /**
+         * Returns the first display list of the given track, or 0 if it
+         * is not compiled.
+         */
+        private int getDisplayList(int trackNr) {
+            if (0 == trackNr && displayListTestTrackSetUp) {
+                return displayListTestTrack;
+            } else if (1 == trackNr && displayListOTrackSetUp) {
+                return displayListOTrack;
+            } else if (2 == trackNr && displayListLTrackSetUp) {
+                return displayListLTrack;
+            } else if (3 == trackNr && displayListCTrackSetUp) {
+                return displayListCTrack;
+            } else if (4 == trackNr && displayListCustomTrackSetUp) {
+                return displayListCustomTrack;
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the first segment of {@code chunk}.
+         */
+        private int getChunkStart(int chunk) {
+            return chunk*SEGMENTS/CHUNKS;
+        }
+
+        /**
+         * Returns the track parameter of segment boundary {@code i}, where
+         * the last boundary wraps around to the start line.
+         */
+        private double getSegmentT(int i) {
+            return (i == SEGMENTS) ? 0 : i/((double) SEGMENTS);
+        }
+
+        /**
+         * Compiles the display lists of the curves and edges of one chunk
+         * of the current track.
+         */
+        private void compileChunk(int chunk) {
+            int from = getChunkStart(chunk);
+            int to = getChunkStart(chunk+1);
+            int chunkDisplayList = currentDisplayList+1+chunk*displayListPerChunkAmount;
+            loadChunkFrames(from, to);
+                    // Compile the display lists for the 4 curves
+                        for (int curve = 0; curve < 4; curve++) {
+                            // Start compiling the display lists
+                            gl.glNewList(chunkDisplayList+curve, GL_COMPILE);
+                            // Use a triangle strip, the last vertices are shared with the next chunk
+                            gl.glBegin(GL2.GL_TRIANGLE_STRIP);
+                                // Normal is pointing up for track
+                                gl.glNormal3d(0, 0, 1);
+                                for (int i = from; i <= to; i++) {
+                                    // Add a vertex describing an inner and outer point of this curve
+                                    int f = 6*(i-from+1);
+                                    double[] c = chunkFrames;
+                                    // Add these two points, that are on the same distance on the track, as vertices to the triangle strip
+                                    gl.glVertex3d(c[f]+c[f+3]*curve, c[f+1]+c[f+4]*curve, c[f+2]+c[f+5]*curve);
+                                    gl.glVertex3d(c[f]+c[f+3]*(curve+1), c[f+1]+c[f+4]*(curve+1), c[f+2]+c[f+5]*(curve+1));
+                                }
+                            // Finish the triangle strip
+                            gl.glEnd();
+                            // Finish compiling the display list
+                            gl.glEndList();
+                        }
                     // Compile the display lists for the track edges
                         for (boolean insideOrOutside : new boolean[] {true, false}) {
-                            gl.glNewList(currentDisplayList+5+(insideOrOutside?1:0), GL_COMPILE);
-                                // Use a triangle strip and create a closed ring out of triangles
+                            gl.glNewList(chunkDisplayList+4+(insideOrOutside?1:0), GL_COMPILE);
+                                // Use a triangle strip, the last vertices are shared with the next chunk
                                 gl.glBegin(GL2.GL_TRIANGLE_STRIP);
-                                    for (int i = 0; i < SEGMENTS; i++) {
-                                        // SEGMENTS times: add a vertex describing an top and bottom point of the edge
-                                        double t = i/((double) SEGMENTS);
-                                        double nextT = (i+1)/((double) SEGMENTS);
-                                        if (nextT >= 1) {
-                                            nextT -= 1;
-                                        }
-                                        Vector top = getPointOnCurrentCurve(t, insideOrOutside?4:0);
-                                        Vector nextTop = getPointOnCurrentCurve(nextT, insideOrOutside?4:0);
+                                    for (int i = from; i < to; i++) {
+                                        // Add a vertex describing an top and bottom point of the edge
+                                        Vector top = getChunkPoint(i, insideOrOutside?4:0);
+                                        Vector nextTop = getChunkPoint(i+1, insideOrOutside?4:0);
                                         Vector bottom = new Vector(top.x(), top.y(), -1);
-                                        if (i == 0) {
-                                            double prevT = (i-1)/((double) SEGMENTS);
-                                            if (prevT < 0) {
-                                                prevT += 1;
-                                            }
-                                            Vector prevTop = getPointOnCurrentCurve(prevT, insideOrOutside?4:0);
+                                        if (i == from) {
+                                            Vector prevTop = getChunkPoint(i-1, insideOrOutside?4:0);
                                             Vector normal = top.subtract(prevTop).cross(bottom.subtract(top));
                                             if(currentTrackNr != 0)normal=normal.scale(-1);
                                             if(insideOrOutside)normal=normal.scale(-1);
@@ -1439,249 +4882,87 @@ public class RobotRace extends Base {
                                         gl.glVertex3d(bottom.x(), bottom.y(), bottom.z());
                                         gl.glNormal3d(normal.x(), normal.y(), normal.z());
                                     }
-                                    // Add the first inner and outer points of this curve again to close the ring
-                                    Vector top = getPointOnCurrentCurve(0, insideOrOutside?4:0);
+                                    // Add the first top and bottom points of the next chunk to close the gap
+                                    Vector top = getChunkPoint(to, insideOrOutside?4:0);
                                     Vector bottom = new Vector(top.x(), top.y(), -1);
-                                    gl.glTexCoord2d(SEGMENTS/8D, 1);
+                                    gl.glTexCoord2d(to/8D, 1);
                                     gl.glVertex3d(top.x(), top.y(), top.z());
-                                    gl.glTexCoord2d(SEGMENTS/8D, 0);
+                                    gl.glTexCoord2d(to/8D, 0);
                                     gl.glVertex3d(bottom.x(), bottom.y(), bottom.z());
                                 // Finish the triangle strip
                                 gl.glEnd();
                             // Finish compiling the display list
                             gl.glEndList();
                         }
-                            
-                    return currentDisplayList;
-        }
-        
-        /**
-         * Returns the position of the current curve.<vr>
-         * 0 = the innermost curve
-         * 5 = the outermost curve.
-         * The curve parameter is a double to support getting the middle position of a track.
-         */
-        public Vector getPointOnCurrentCurve(double t, double curve) {
-            if (0 == currentTrackNr) {
-                return getPointOnTestCurve(t, curve);
-            } else if (1 == currentTrackNr) {
-                return getPointOnOCurve(t, curve);
-            } else if (2 == currentTrackNr) {
-                return getPointOnLCurve(t, curve);
-            } else if (3 == currentTrackNr) {
-                return getPointOnCCurve(t, curve);
-            } else if (4 == currentTrackNr) {
-                return getPointOnCustomCurve(t, curve);
-            }
-            return null;
         }
-        
+
         /**
-         * Returns the tangent of the current curve.<vr>
-         * 0 = the innermost curve
-         * 5 = the outermost curve.
-         * The curve parameter is a double to support getting the middle position of a track.
-         */
-        public Vector getTangentOnCurrentCurve(double t) {
-            if (0 == currentTrackNr) {
-                return getTestTangent(t);
-            } else if (1 == currentTrackNr) {
-                currentControlPoints = controlPointsOTrack;
-            } else if (2 == currentTrackNr) {
-                currentControlPoints = controlPointsLTrack;
-            } else if (3 == currentTrackNr) {
-                 currentControlPoints = controlPointsCTrack;
-            } else if (4 == currentTrackNr) {
-                 currentControlPoints = controlPointsCustomTrack;
-            }
-            if (t >= 1) {
-                    t -= 1;
-                }
-            int numberOfSegments = (currentControlPoints.length-1)/3;
-            int segment = (int) Math.floor(t*numberOfSegments);
-            // get Bezier points
-            Vector P0 = currentControlPoints[segment*3];
-            Vector P1 = currentControlPoints[segment*3+1];
-            Vector P2 = currentControlPoints[segment*3+2];
-            Vector P3 = currentControlPoints[segment*3+3];
-            double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
-            // get tangent
-            Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3);
-            return tangent;
-        }
-        
-         /**
-         * Returns the position of the {@code curve}'th outermost O curve at 0 <= {@code t} <= 1.<br>
-         * 0 = the innermost curve
-         * 5 = the outermost curve
-         * The curve parameter is a double to support getting the middle position of a track.
+         * Interpolates the frames of the segment boundaries from
+         * {@code from - 1} to {@code to} of the current track, so that
+         * each lane at a boundary takes a single multiply-add.
          */
-        public Vector getPointOnOCurve(double t, double curve) {
-            if (t >= 1) {
-                t -= 1;
+        private void loadChunkFrames(int from, int to) {
+            if (chunkFrames.length < 6*(to-from+2)) {
+                chunkFrames = new double[6*(to-from+2)];
             }
-            int numberOfSegments = (controlPointsOTrack.length-1)/3;
-            int segment = (int) Math.floor(t*numberOfSegments);
-            
-            Vector P0 = controlPointsOTrack[segment*3];
-            Vector P1 = controlPointsOTrack[segment*3+1];
-            Vector P2 = controlPointsOTrack[segment*3+2];
-            Vector P3 = controlPointsOTrack[segment*3+3];
-            double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
-            Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
-            if (curve == 0) {
-                return point;
-            }
-            Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
-            Vector normal = tangent.cross(Vector.Z).normalized();
-            return point.add(normal.scale(curve));
-        }
-        
-        /**
-         * Returns the position of the {@code curve}'th outermost L curve at 0 <= {@code t} <= 1.<br>
-         * 0 = the innermost curve
-         * 5 = the outermost curve
-         * The curve parameter is a double to support getting the middle position of a track.
-         */
-        public Vector getPointOnLCurve(double t, double curve) {
-            if (t >= 1) {
-                t -= 1;
+            TrackFrames frames = getFrames(currentTrackNr);
+            for (int i = from-1; i <= to; i++) {
+                frames.getFrame(getSegmentT(i < 0 ? i+SEGMENTS : i), chunkFrames, 6*(i-from+1));
             }
-            int numberOfSegments = (controlPointsLTrack.length-1)/3;
-            int segment = (int) Math.floor(t*numberOfSegments);
-            
-            Vector P0 = controlPointsLTrack[segment*3];
-            Vector P1 = controlPointsLTrack[segment*3+1];
-            Vector P2 = controlPointsLTrack[segment*3+2];
-            Vector P3 = controlPointsLTrack[segment*3+3];
-            double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
-            Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
-            if (curve == 0) {
-                return point;
-            }
-            Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
-            Vector normal = tangent.cross(Vector.Z).normalized();
-            return point.add(normal.scale(curve));
+            chunkFramesFrom = from;
         }
-        
+
         /**
-         * Returns the position of the {@code curve}'th outermost C curve at 0 <= {@code t} <= 1.<br>
-         * 0 = the innermost curve
-         * 5 = the outermost curve
-         * The curve parameter is a double to support getting the middle position of a track.
+         * Returns the point on lane {@code curve} at segment boundary
+         * {@code i}, from the frames of the chunk that is compiled.
          */
-        public Vector getPointOnCCurve(double t, double curve) {
-            if (t >= 1) {
-                t -= 1;
-            }
-            int numberOfSegments = (controlPointsCTrack.length-1)/3;
-            int segment = (int) Math.floor(t*numberOfSegments);
-            
-            Vector P0 = controlPointsCTrack[segment*3];
-            Vector P1 = controlPointsCTrack[segment*3+1];
-            Vector P2 = controlPointsCTrack[segment*3+2];
-            Vector P3 = controlPointsCTrack[segment*3+3];
-            double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
-            Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
-            if (curve == 0) {
-                return point;
-            }
-            Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
-            Vector normal = tangent.cross(Vector.Z).normalized();
-            return point.add(normal.scale(curve));
+        private Vector getChunkPoint(int i, double curve) {
+            int f = 6*(i-chunkFramesFrom+1);
+            return new Vector(chunkFrames[f]+chunkFrames[f+3]*curve,
+                              chunkFrames[f+1]+chunkFrames[f+4]*curve,
+                              chunkFrames[f+2]+chunkFrames[f+5]*curve);
         }
-        
+
         /**
-         * Returns the position of the {@code curve}'th outermost custom curve at 0 <= {@code t} <= 1.<br>
-         * 0 = the innermost curve
-         * 5 = the outermost curve
-         * The curve parameter is a double to support getting the middle position of a track.
+         * Stores the bounding box of {@code chunk} of the current track in
+         * {@code bounds}, as min x, y, z and max x, y, z.
          */
-        public Vector getPointOnCustomCurve(double t, double curve) {
-            if (t >= 1) {
-                t -= 1;
+        private void computeChunkBounds(int chunk, double[] bounds) {
+            int b = 6*chunk;
+            bounds[b] = bounds[b+1] = Double.POSITIVE_INFINITY;
+            bounds[b+3] = bounds[b+4] = bounds[b+5] = Double.NEGATIVE_INFINITY;
+            // The edges reach down to z = -1
+            bounds[b+2] = -1;
+            for (int i = getChunkStart(chunk); i <= getChunkStart(chunk+1); i++) {
+                for (int curve = 0; curve <= 4; curve += 4) {
+                    Vector point = getChunkPoint(i, curve);
+                    bounds[b] = Math.min(bounds[b], point.x());
+                    bounds[b+1] = Math.min(bounds[b+1], point.y());
+                    bounds[b+3] = Math.max(bounds[b+3], point.x());
+                    bounds[b+4] = Math.max(bounds[b+4], point.y());
+                    bounds[b+5] = Math.max(bounds[b+5], point.z());
+                }
             }
-            int numberOfSegments = (controlPointsCustomTrack.length-1)/3;
-            int segment = (int) Math.floor(t*numberOfSegments);
-            
-            Vector P0 = controlPointsCustomTrack[segment*3];
-            Vector P1 = controlPointsCustomTrack[segment*3+1];
-            Vector P2 = controlPointsCustomTrack[segment*3+2];
-            Vector P3 = controlPointsCustomTrack[segment*3+3];
-            double bezierT = (t-(((double) segment)/numberOfSegments))*numberOfSegments;
-            Vector point = getCubicBezierPnt(bezierT, P0, P1, P2, P3);
-            if (curve == 0) {
-                return point;
-            }
-            Vector tangent = getCubicBezierTng(bezierT, P0, P1, P2, P3).scale(-1);
-            Vector normal = tangent.cross(Vector.Z).normalized();
-            return point.add(normal.scale(curve));
         }
         
         /**
-         * Returns the position of the {@code curve}'th outermost test curve at 0 <= {@code t} <= 1.<br>
+         * Returns the position of the current curve.<vr>
          * 0 = the innermost curve
-         * 5 = the outermost curve
+         * 5 = the outermost curve.
          * The curve parameter is a double to support getting the middle position of a track.
          */
-        public Vector getPointOnTestCurve(double t, double curve) {
-            Vector point = getTestPoint(t);
-            if (curve == 0) {
-                return point;
-            }
-            Vector tangent = getTestTangent(t);
-            Vector normal = tangent.cross(Vector.Z).normalized();
-            return point.add(normal.scale(curve));
-        }
-        
-        /**
-         * Returns the position of the test curve at 0 <= {@code t} <= 1.
-         */
-        public Vector getTestPoint(double t) {
-            // / 10 * cos(2*pi*t) \
-            // | 14 * sin(2*pi*t) |
-            // \ 1                /
-
-            return new Vector(10 * Math.cos(2 * Math.PI * t),
-                              14 * Math.sin(2 * Math.PI * t),
-                              1);
+        public Vector getPointOnCurrentCurve(double t, double curve) {
+            return getLanePoint(currentTrackNr, t, curve);
         }
 
         /**
-         * Returns the tangent of the test curve at 0 <= {@code t} <= 1.
-         */
-        public Vector getTestTangent(double t) {
-            // / 10 * cos(2*pi*t) \
-            // | 14 * sin(2*pi*t) |
-            // \ 1                /
-
-            return new Vector(-10 * Math.sin(2 * Math.PI * t),
-                              14 * Math.cos(2 * Math.PI * t),
-                              0);
-        }
-        
-        /**
-         * Returns a point on a cubic Bezier segment
-         */
-        public Vector getCubicBezierPnt(double t, Vector P0, Vector P1, Vector P2, Vector P3) {
-            /*Vector CasteljauA01 = P0.add(P1.subtract(P0).scale(t));
-            Vector CasteljauA12 = P1.add(P2.subtract(P1).scale(t));
-            Vector CasteljauA23 = P2.add(P3.subtract(P2).scale(t));
-            Vector CasteljauB01 = CasteljauA01.add(CasteljauA12.subtract(CasteljauA01).scale(t));
-            Vector CasteljauB12 = CasteljauA12.add(CasteljauA23.subtract(CasteljauA12).scale(t));
-            Vector CasteljauC01 = CasteljauB01.add(CasteljauB12.subtract(CasteljauB01).scale(t));
-            return CasteljauC01;*/
-            return P0.scale((1-t)*(1-t)*(1-t)).add(P1.scale(3*t*(1-t)*(1-t))).add(P2.scale(3*t*t*(1-t))).add(P3.scale(t*t*t));
-        }
-        
-        /**
-         * Returns the approximate tangent vector on a cubic Bezier segment
+         * Returns the tangent of the current curve.<vr>
+         * 0 = the innermost curve
+         * 5 = the outermost curve.
+         * The curve parameter is a double to support getting the middle position of a track.
          */
-        public Vector getCubicBezierTng(double t, Vector P0, Vector P1, Vector P2, Vector P3) {
-            // commented out: correct equations but prone to errors
-                // standardBezier: return P0.scale((1-t)*(1-t)*(1-t)).add(P1.scale(3*t*(1-t)*(1-t))).add(P2.scale(3*t*t*(1-t))).add(P3.scale(t*t*t));
-                return P1.subtract(P0).scale(3*(1-t)*(1-t)).add(P2.subtract(P1).scale(6*(1-t)*t)).add(P3.subtract(P2).scale(3*t*t));
-            //return getCubicBezierPnt(t+0.001, P0, P1, P2, P3).subtract(getCubicBezierPnt(t, P0, P1, P2, P3));
+        public Vector getTangentOnCurrentCurve(double t) {
+            return getTangentOnCurve(currentTrackNr, t);
         }
 
     }
@@ -1689,7 +4970,7 @@ public class RobotRace extends Base {
     /**
      * Implementation of the terrain.
      */
-    private class Terrain {
+    private class Terrain implements ResourceOwner {
         
         /** Display list for the terrain. */
         private int displayListTerrain;
@@ -1714,7 +4995,7 @@ public class RobotRace extends Base {
         
         /** Returns the height of the terrain at a specific x and y. */
         private double getTerrainHeight(double x, double y) {
-            return 0.6*Math.cos(0.3*x+0.2*y)+0.4*Math.cos(x-0.5*y);
+            return TerrainHeight.getHeight(x, y);
         }
         
         /** The colors for the 1D texture */
@@ -1726,6 +5007,18 @@ public class RobotRace extends Base {
         
         /** The texid for the 1D texture */
         private int texture;
+
+        /** The 1D texture on the GPU, or null if not created. */
+        private GpuResource textureResource = null;
+
+        /** The display list on the GPU, or null if not compiled. */
+        private GpuResource displayListResource = null;
+
+        /** Bounding box of the terrain and the water surface. */
+        private double[] bounds = new double[] {-40, -40, -1, 40, 40, 1};
+
+        /** Views in which the terrain is visible, as bits. */
+        private int views = 0;
         
         /**
          * Constructs the terrain.
@@ -1736,13 +5029,50 @@ public class RobotRace extends Base {
         }
 
         /**
-         * Draws the terrain.
+         * Changes the number of segments used to draw the terrain; the
+         * display list is compiled again when drawn next.
          */
-        public void draw() {
+        public void setSegments(int segments) {
+            if (segments == SEGMENTS) {
+                return;
+            }
+            SEGMENTS = segments;
+            if (displayListTerrainSetUp) {
+                resources.release(displayListResource);
+                displayListResource = null;
+                displayListTerrainSetUp = false;
+            }
+        }
+
+        /**
+         * Forgets the display list or the texture that was deleted along
+         * with the OpenGL context; they are created again when the terrain
+         * is drawn next.
+         */
+        @Override
+        public void evicted(GpuResource resource) {
+            if (resource == displayListResource) {
+                displayListResource = null;
+                displayListTerrainSetUp = false;
+            } else if (resource == textureResource) {
+                textureResource = null;
+                texture = 0;
+            }
+        }
+
+        /**
+         * Prepares the terrain for drawing in the views of the current
+         * frame: compiles it if needed, and determines which views show it.
+         */
+        public void prepare() {
             // If the display list has not been set up yet, create it
             if (!displayListTerrainSetUp) {
-                // Create the texture
-                texture = create1DTexture(gl, textureColors);
+                // Create the texture, once
+                if (0 == texture) {
+                    texture = create1DTexture(gl, textureColors);
+                    textureResource = resources.register(GpuResources.TEXTURE, texture, 1,
+                            textureColors.length * 4, "terrain colors", this, false);
+                }
                 // Set up the display list
                 displayListTerrain = gl.glGenLists(1);
                 // Start compiling the display list
@@ -1812,9 +5142,31 @@ public class RobotRace extends Base {
                 gl.glEnd();
                 // Finish compiling the display list
                 gl.glEndList();
+                // Every vertex has a position, a normal and a texture coordinate
+                long bytes = (4L*SEGMENTS*SEGMENTS*6+4)*28;
+                displayListResource = resources.register(GpuResources.LIST,
+                        displayListTerrain, 1, bytes, "terrain", this, false);
                 // Set set up boolean to true
                 displayListTerrainSetUp = true;
             }
+            // Determine which views show the terrain
+            views = 0;
+            for (int view = 0; view < viewCount; view++) {
+                if (viewFrusta[view].isBoxVisible(bounds, 0)) {
+                    views |= 1 << view;
+                }
+            }
+            frameStats.terrainCulled = 0 == views;
+        }
+
+        /**
+         * Draws the prepared terrain, if {@code view} shows it.
+         */
+        public void draw(int view) {
+            // Skip the terrain if it is out of view
+            if (0 == (views & (1 << view))) {
+                return;
+            }
             gl.glDisable(GL_TEXTURE_2D);
             gl.glEnable(GL_TEXTURE_1D);
             // Bind the terrain texture
@@ -1889,12 +5241,578 @@ public class RobotRace extends Base {
     return texid[0];
     }
 
+    /**
+     * Load test of the renderer. It runs the race in a child process for
+     * every configuration, sweeping the number of robots, the segments of
+     * the track and the segments of the terrain one at a time from the
+     * default, and reports whether each sustains the target frame rate.
+     * The default configuration runs once more while recording its
+     * frames, to report the cost of the capture and to check the images
+     * that it wrote.
+     *
+     * Every child renders as fast as it can, so the frame times measure
+     * the cost of a frame rather than the pace of the scheduler. A child
+     * runs in a fresh virtual machine, so the configurations do not warm
+     * up or fill the heap for each other.
+     *
+     * Usage: {@code RobotRace load [seconds] [report]}
+     */
+    static class LoadGenerator {
+
+        /** Numbers of robots to sweep, the first being the default. */
+        private final static int[] ROBOT_COUNTS = {4, 16, 64, 256};
+
+        /** Numbers of track segments to sweep, the first being the default. */
+        private final static int[] TRACK_SEGMENTS = {300, 1000, 3000};
+
+        /** Numbers of terrain segments to sweep, the first being the default. */
+        private final static int[] TERRAIN_SEGMENTS = {100, 200, 400};
+
+        /** Time that a child may take beyond its run, in milliseconds. */
+        private final static long GRACE_MILLIS = 60000;
+
+        /** Largest cost of recording, as a fraction of the frame time. */
+        private final static double CAPTURE_BUDGET = 0.05;
+
+        /**
+         * Parses the command line arguments, runs all configurations and
+         * writes the report.
+         */
+        public static void main(String[] args) throws IOException, InterruptedException {
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            File report = new File(args.length > 2 ? args[2]
+                    : System.getProperty("robotrace.load.report", "load-report.txt"));
+
+            // robots, track segments, terrain segments, and 1 to record
+            List<int[]> configurations = new ArrayList<int[]>();
+            configurations.add(new int[] {ROBOT_COUNTS[0], TRACK_SEGMENTS[0], TERRAIN_SEGMENTS[0], 0});
+            for (int i = 1; i < ROBOT_COUNTS.length; i++) {
+                configurations.add(new int[] {ROBOT_COUNTS[i], TRACK_SEGMENTS[0], TERRAIN_SEGMENTS[0], 0});
+            }
+            for (int i = 1; i < TRACK_SEGMENTS.length; i++) {
+                configurations.add(new int[] {ROBOT_COUNTS[0], TRACK_SEGMENTS[i], TERRAIN_SEGMENTS[0], 0});
+            }
+            for (int i = 1; i < TERRAIN_SEGMENTS.length; i++) {
+                configurations.add(new int[] {ROBOT_COUNTS[0], TRACK_SEGMENTS[0], TERRAIN_SEGMENTS[i], 0});
+            }
+            configurations.add(new int[] {ROBOT_COUNTS[0], TRACK_SEGMENTS[0], TERRAIN_SEGMENTS[0], 1});
+
+            // The recording child creates the directory
+            File captureDirectory = File.createTempFile("robotrace-capture", "");
+            captureDirectory.delete();
+
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("Load test, %d s per configuration, target %d FPS (%.1f ms)%n",
+                    seconds, TARGET_FPS, 1000.0 / TARGET_FPS));
+            String renderer = null;
+            List<String> results = new ArrayList<String>();
+            List<String> rows = new ArrayList<String>();
+            for (int[] configuration : configurations) {
+                System.out.printf("Running %d robots, %d track segments, %d terrain segments%s%n",
+                        configuration[0], configuration[1], configuration[2],
+                        0 != configuration[3] ? ", recording" : "");
+                String[] result = runChild(configuration, seconds, captureDirectory);
+                if (null == renderer && null != result[0]) {
+                    renderer = result[0];
+                }
+                results.add(result[1]);
+                rows.add(formatRow(configuration, result[1]));
+            }
+            text.append(String.format("Renderer: %s%n%n", null == renderer ? "unknown" : renderer));
+            text.append(String.format("%6s %6s %7s %7s %7s %8s %8s %6s %10s %9s  %s%n",
+                    "robots", "track", "terrain", "capture", "frames", "mean ms", "p99 ms", "60fps",
+                    "alloc MB/s", "GL/frame", "top GL calls per frame"));
+            for (String row : rows) {
+                text.append(row);
+            }
+            text.append(checkCapture(results.get(0), results.get(results.size() - 1),
+                                     captureDirectory));
+
+            FileWriter out = new FileWriter(report);
+            try {
+                out.write(text.toString());
+            } finally {
+                out.close();
+            }
+            System.out.print(text);
+            System.out.println("Report written to " + report.getPath());
+        }
+
+        /**
+         * Runs {@code configuration} in a child process, recording into
+         * {@code captureDirectory} if it asks for that, and returns the
+         * renderer line and the result line that it printed, either of
+         * which is null if it did not.
+         */
+        private static String[] runChild(int[] configuration, int seconds, File captureDirectory)
+                throws IOException, InterruptedException {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            List<String> command = new ArrayList<String>(Arrays.asList(java,
+                    "-cp", System.getProperty("java.class.path"),
+                    "-Drobotrace.scheduler=fast"));
+            if (0 != configuration[3]) {
+                command.add("-Drobotrace.capture=" + captureDirectory.getPath());
+            }
+            command.addAll(Arrays.asList("RobotRace", "load-run",
+                    Integer.toString(configuration[0]),
+                    Integer.toString(configuration[1]),
+                    Integer.toString(configuration[2]),
+                    Integer.toString(seconds)));
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            final Process process = builder.start();
+
+            // Stop a child that hangs, so its output ends
+            final long deadline = System.currentTimeMillis() + seconds * 1000L + GRACE_MILLIS;
+            Thread watchdog = new Thread("LoadWatchdog") {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(Math.max(0, deadline - System.currentTimeMillis()));
+                        process.destroy();
+                    } catch (InterruptedException ex) {
+                        // the child finished in time
+                    }
+                }
+            };
+            watchdog.setDaemon(true);
+            watchdog.start();
+
+            String[] result = new String[2];
+            List<String> output = new ArrayList<String>();
+            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            try {
+                String line;
+                while (null == result[1] && null != (line = in.readLine())) {
+                    if (line.startsWith(LoadRun.RENDERER)) {
+                        result[0] = line.substring(LoadRun.RENDERER.length()).trim();
+                    } else if (line.startsWith(LoadRun.RESULT)) {
+                        result[1] = line.substring(LoadRun.RESULT.length()).trim();
+                    } else {
+                        output.add(line);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            // The child exits on its own, but need not be waited for once it reported
+            process.destroy();
+            process.waitFor();
+            watchdog.interrupt();
+
+            if (null == result[1]) {
+                System.err.println("The run reported no result:");
+                for (String line : output) {
+                    System.err.println("  " + line);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the row of the report for {@code configuration}, from the
+         * result line of its run.
+         */
+        private static String formatRow(int[] configuration, String result) {
+            String prefix = String.format("%6d %6d %7d %7s ",
+                    configuration[0], configuration[1], configuration[2],
+                    0 != configuration[3] ? "yes" : "no");
+            if (null == result) {
+                return prefix + "failed" + String.format("%n");
+            }
+            // frames, mean, p99, allocated bytes per second, calls per frame, top calls
+            String[] fields = result.split(" ", 6);
+            long frames = Long.parseLong(fields[0]);
+            double mean = Double.parseDouble(fields[1]);
+            double p99 = Double.parseDouble(fields[2]);
+            double allocated = Double.parseDouble(fields[3]);
+            double calls = Double.parseDouble(fields[4]);
+            return prefix + String.format("%7d %8.2f %8.2f %6s %10s %9.0f  %s%n",
+                    frames, mean, p99,
+                    p99 <= 1000.0 / TARGET_FPS ? "yes" : "no",
+                    allocated < 0 ? "n/a" : String.format("%.1f", allocated / 1e6),
+                    calls, fields.length > 5 ? fields[5] : "");
+        }
+
+        /**
+         * Returns the lines of the report on recording: the cost of the
+         * capture, from the mean frame times of the {@code plain} and the
+         * {@code recorded} result lines, and whether the images written
+         * into {@code directory} read back at a single size. Deletes the
+         * images afterwards.
+         */
+        private static String checkCapture(String plain, String recorded, File directory) {
+            StringBuilder text = new StringBuilder(String.format("%n"));
+            if (null == plain || null == recorded) {
+                text.append(String.format("Capture cost: unknown, a run failed%n"));
+            } else {
+                double cost = Double.parseDouble(recorded.split(" ")[1])
+                        / Double.parseDouble(plain.split(" ")[1]) - 1;
+                text.append(String.format("Capture cost: %+.1f%% frame time, within %.0f%%: %s%n",
+                        100 * cost, 100 * CAPTURE_BUDGET, cost <= CAPTURE_BUDGET ? "yes" : "no"));
+            }
+
+            int images = 0;
+            int unreadable = 0;
+            int width = -1;
+            int height = -1;
+            boolean sameSize = true;
+            File[] files = directory.listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    if (file.getName().matches("frame\\d+\\.png")) {
+                        images++;
+                        BufferedImage image = null;
+                        try {
+                            image = ImageIO.read(file);
+                        } catch (IOException ex) {
+                            // counted as unreadable
+                        }
+                        if (null == image) {
+                            unreadable++;
+                        } else if (width < 0) {
+                            width = image.getWidth();
+                            height = image.getHeight();
+                        } else if (image.getWidth() != width || image.getHeight() != height) {
+                            sameSize = false;
+                        }
+                    }
+                    file.delete();
+                }
+            }
+            directory.delete();
+            text.append(String.format("Capture images: %d written, %d unreadable, %s%n",
+                    images, unreadable, width < 0 ? "none read"
+                    : sameSize ? width + "x" + height : "sizes differ"));
+            return text.toString();
+        }
+    }
+
+    /**
+     * Measurement of a single run of the load test, in the child process.
+     *
+     * After a warm up, the run first times the frames and measures the
+     * allocation rate with the plain GL, and then counts the GL calls of
+     * a number of frames through a {@link GLCallCounter}, whose own overhead
+     * would otherwise show up in the timings. The results are printed as
+     * a single line for the {@link LoadGenerator}, after which the process
+     * exits.
+     */
+    static class LoadRun {
+
+        /** Prefix of the line with the renderer. */
+        public final static String RENDERER = "LOAD-RENDERER";
+
+        /** Prefix of the line with the results. */
+        public final static String RESULT = "LOAD-RESULT";
+
+        /** Time to warm up before measuring. */
+        private final static long WARMUP_NANOS = 2000000000L;
+
+        /** Number of frames of which to count the GL calls. */
+        private final static int COUNTED_FRAMES = 60;
+
+        /** Number of GL calls to report by name. */
+        private final static int TOP_CALLS = 5;
+
+        /** Largest number of frames to time per second of the run. */
+        private final static int FRAMES_PER_SECOND = 10000;
+
+        /** Phases of the run. */
+        private final static int WARMUP = 0, TIMING = 1, COUNTING = 2, DONE = 3;
+
+        /** Number of robots. */
+        final int robots;
+
+        /** Number of track segments. */
+        final int trackSegments;
+
+        /** Number of terrain segments. */
+        final int terrainSegments;
+
+        /** Duration of the timing, in nanoseconds. */
+        private final long runNanos;
+
+        /** Frame times, preallocated so the timing does not allocate. */
+        private final long[] frameNanos;
+
+        /** Number of frame times. */
+        private int frames = 0;
+
+        /** The current phase. */
+        private int phase = WARMUP;
+
+        /** Start of the current phase, and of the last frame. */
+        private long phaseStart, lastFrame;
+
+        /** Bytes allocated by all threads at the start of the timing. */
+        private long allocatedStart;
+
+        /** Allocation rate during the timing, in bytes per second, or -1. */
+        private double allocationRate = -1;
+
+        /** Number of frames counted so far. */
+        private int counted = 0;
+
+        /** The drawable, and its own GL. */
+        private GLAutoDrawable drawable;
+        private GL2 realGL;
+
+        /** Counts the GL calls of the counted frames. */
+        private GLCallCounter counter;
+
+        /**
+         * Constructs the measurement of a run of {@code seconds}.
+         */
+        LoadRun(int robots, int trackSegments, int terrainSegments, int seconds) {
+            this.robots = robots;
+            this.trackSegments = trackSegments;
+            this.terrainSegments = terrainSegments;
+            runNanos = seconds * 1000000000L;
+            frameNanos = new long[Math.max(1, seconds) * FRAMES_PER_SECOND];
+        }
+
+        /**
+         * Starts the run, on the GL thread of {@code drawable}.
+         */
+        void start(GLAutoDrawable drawable) {
+            this.drawable = drawable;
+            realGL = drawable.getGL().getGL2();
+            System.out.println(RENDERER + " " + realGL.glGetString(GL_RENDERER)
+                    + " (" + realGL.glGetString(GL_VERSION) + ")");
+        }
+
+        /**
+         * Notes the start of a frame, on the GL thread.
+         */
+        void frame() {
+            long now = System.nanoTime();
+            if (0 == lastFrame) {
+                phaseStart = now;
+            }
+            switch (phase) {
+                case WARMUP:
+                    if (now - phaseStart >= WARMUP_NANOS) {
+                        phase = TIMING;
+                        phaseStart = now;
+                        allocatedStart = getAllocatedBytes();
+                    }
+                    break;
+                case TIMING:
+                    if (frames < frameNanos.length) {
+                        frameNanos[frames++] = now - lastFrame;
+                    }
+                    if (now - phaseStart >= runNanos) {
+                        long allocated = getAllocatedBytes();
+                        if (allocated >= 0 && allocatedStart >= 0) {
+                            allocationRate = (allocated - allocatedStart) * 1e9 / (now - phaseStart);
+                        }
+                        // counts from the next frame on
+                        phase = COUNTING;
+                        counter = new GLCallCounter(realGL);
+                        drawable.setGL(counter.getGL());
+                    }
+                    break;
+                case COUNTING:
+                    if (0 == counted++) {
+                        counter.reset();
+                    } else if (counted > COUNTED_FRAMES) {
+                        drawable.setGL(realGL);
+                        phase = DONE;
+                        report(counted - 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            lastFrame = now;
+        }
+
+        /**
+         * Prints the results of the run, and exits.
+         */
+        private void report(int countedFrames) {
+            long[] sorted = Arrays.copyOf(frameNanos, frames);
+            Arrays.sort(sorted);
+            double total = 0;
+            for (long nanos : sorted) {
+                total += nanos;
+            }
+            double mean = 0 == frames ? 0 : total / frames / 1e6;
+            double p99 = 0 == frames ? 0
+                    : sorted[Math.min(frames - 1, (int) Math.ceil(0.99 * frames) - 1)] / 1e6;
+
+            StringBuilder top = new StringBuilder();
+            for (String name : counter.getTopNames(TOP_CALLS)) {
+                top.append(String.format("%s=%.0f ", name,
+                        counter.getCount(name) / (double) countedFrames));
+            }
+            System.out.println(String.format(Locale.ROOT, "%s %d %.3f %.3f %.0f %.1f %s",
+                    RESULT, frames, mean, p99, allocationRate,
+                    counter.getTotal() / (double) countedFrames, top.toString().trim()));
+            System.out.flush();
+
+            // Not on the GL thread, which the shut down may wait for
+            Thread exit = new Thread("LoadExit") {
+                @Override
+                public void run() {
+                    System.exit(0);
+                }
+            };
+            exit.setDaemon(true);
+            exit.start();
+        }
+
+        /**
+         * Returns the bytes allocated by all live threads so far, or -1 if
+         * the virtual machine does not tell.
+         */
+        private static long getAllocatedBytes() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()
+                    || !threads.isThreadAllocatedMemoryEnabled()) {
+                return -1;
+            }
+            long total = 0;
+            for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                if (bytes > 0) {
+                    total += bytes;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Counter of the GL calls by name. It is the stream of a JOGL trace
+     * pipeline, which prints the name and arguments of every call before
+     * passing it on to the real GL; only the names are kept.
+     */
+    static class GLCallCounter extends PrintStream {
+
+        /** The GL through which the calls are counted. */
+        private final GL2 gl;
+
+        /** Number of calls, by method name. */
+        private final Map<String, long[]> counts = new HashMap<String, long[]>();
+
+        /** Total number of calls. */
+        private long total = 0;
+
+        /**
+         * Constructs a counter of the calls to {@code gl}.
+         */
+        GLCallCounter(GL2 gl) {
+            super(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    // only the names are of interest
+                }
+            });
+            this.gl = new TraceGL2(gl, this);
+        }
+
+        /**
+         * Returns the GL through which the calls are counted.
+         */
+        GL2 getGL() {
+            return gl;
+        }
+
+        /**
+         * Forgets the calls counted so far.
+         */
+        void reset() {
+            counts.clear();
+            total = 0;
+        }
+
+        /**
+         * Returns the total number of calls.
+         */
+        long getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the number of calls to the methods named {@code name}.
+         */
+        long getCount(String name) {
+            long[] count = counts.get(name);
+            return null == count ? 0 : count[0];
+        }
+
+        /**
+         * Returns the names of the {@code n} methods called most.
+         */
+        List<String> getTopNames(int n) {
+            List<String> names = new ArrayList<String>(counts.keySet());
+            Collections.sort(names, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    long difference = getCount(b) - getCount(a);
+                    return difference > 0 ? 1 : difference < 0 ? -1 : a.compareTo(b);
+                }
+            });
+            return names.subList(0, Math.min(n, names.size()));
+        }
+
+        /**
+         * Counts a call, which the trace starts as its name followed by its
+         * arguments; the results that it prints on are ignored.
+         */
+        @Override
+        public void print(String s) {
+            int end = s.indexOf('(');
+            if (end <= 0 || !s.startsWith("gl")) {
+                return;
+            }
+            String name = s.substring(0, end);
+            long[] count = counts.get(name);
+            if (null == count) {
+                count = new long[1];
+                counts.put(name, count);
+            }
+            count[0]++;
+            total++;
+        }
+    }
+
     /**
      * Main program execution body, delegates to an instance of
      * the RobotRace implementation.
      */
-    public static void main(String args[]) {
-        RobotRace robotRace = new RobotRace();
+    public static void main(String args[]) throws Exception {
+        // Run headless races instead, if asked for
+        if (args.length > 0 && "batch".equals(args[0])) {
+            BatchRaceRunner.main(args);
+            return;
+        }
+        // Broadcast a headless race, or watch one, if asked for
+        if (args.length > 0 && "server".equals(args[0])) {
+            RaceServer.main(args);
+            return;
+        }
+        // Sweep the load on the renderer, or measure a single configuration
+        if (args.length > 0 && "load".equals(args[0])) {
+            LoadGenerator.main(args);
+            return;
+        }
+        LoadRun loadRun = null;
+        if (args.length > 4 && "load-run".equals(args[0])) {
+            loadRun = new LoadRun(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                                  Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        }
+        InetSocketAddress streamAddress = null;
+        if (args.length > 0 && "client".equals(args[0])) {
+            streamAddress = new InetSocketAddress(args.length > 1 ? args[1] : "localhost",
+                    args.length > 2 ? Integer.parseInt(args[2]) : RaceStream.DEFAULT_PORT);
+        }
+        RobotRace robotRace = new RobotRace(loadRun, streamAddress);
     }
 
 }